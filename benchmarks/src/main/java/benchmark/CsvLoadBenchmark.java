@@ -0,0 +1,77 @@
+package benchmark;
+
+import model.CsvParser;
+import model.SampleColumn;
+import model.WaveformCache;
+import model.WaveformFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a CSV file from scratch and from the binary cache. The default sizes stop at 10^7 rows; 10^8 rows (about
+ * 4GB on disk) can be run with {@code -p rows=100000000} on a machine with the memory for it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Dlabelme.cache=false"})
+public class CsvLoadBenchmark {
+    @Param({"100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"4"})
+    public int columns;
+
+    private File file;
+    private File cacheDirectory;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = SyntheticCsv.get(rows, columns);
+        cacheDirectory = Files.createTempDirectory("labelme-bench-cache").toFile();
+        CsvParser parser = new CsvParser(file);
+        parser.parse();
+        new WaveformCache(file, cacheDirectory).write(parser.getHeaders(), parser.getColumns());
+    }
+
+    @Benchmark
+    public Object parse() throws Exception {
+        CsvParser parser = new CsvParser(file);
+        parser.parse();
+        return parser.getColumns();
+    }
+
+    @Benchmark
+    public WaveformFile loadWaveformFile() throws Exception {
+        return new WaveformFile(file, SyntheticCsv.TIME_COLUMN);
+    }
+
+    @Benchmark
+    public double readCache() throws Exception {
+        WaveformCache cache = new WaveformCache(file, cacheDirectory);
+        if(!cache.read()) {
+            throw new IllegalStateException("Cache entry missing for " + file);
+        }
+        // touch the last sample of each column so the mapping is really used
+        double sum = 0;
+        for(SampleColumn column : cache.getColumns()) {
+            sum += column.get(column.size() - 1);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,118 @@
+package benchmark;
+
+import model.DecimatedWaveformDataset;
+import model.Decimation;
+import model.MinMaxPyramid;
+import model.SampleColumn;
+import model.WaveformFile;
+import org.jfree.data.xy.XYDataset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a loaded column into something a chart can draw: building its min/max pyramid, resampling it to a plot
+ * width for the whole recording and for zoomed-in windows, and reading every point of the full resolution dataset
+ * the way a chart renderer without decimation would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Dlabelme.cache=false"})
+public class DecimationBenchmark {
+    private static final double EVENT_WINDOW_SECONDS = 0.2;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"1920"})
+    public int pixels;
+
+    private WaveformFile file;
+    private String column;
+    private SampleColumn time;
+    private SampleColumn values;
+    private MinMaxPyramid pyramid;
+    private DecimatedWaveformDataset dataset;
+    private XYDataset fullDataset;
+    private final Decimation decimation = new Decimation();
+    private double start;
+    private double end;
+    private boolean zoomed = false;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = new WaveformFile(SyntheticCsv.get(rows, 1), SyntheticCsv.TIME_COLUMN);
+        column = SyntheticCsv.column(0);
+        time = file.getTimeColumn();
+        values = file.getColumn(column);
+        pyramid = file.getPyramid(column);
+        dataset = file.getDecimatedWaveform(column);
+        fullDataset = file.getWaveform(column);
+        start = time.getDouble(0);
+        end = time.getDouble(time.size() - 1);
+    }
+
+    @Benchmark
+    public MinMaxPyramid buildPyramid() {
+        return new MinMaxPyramid(values);
+    }
+
+    @Benchmark
+    public Decimation decimateFullRange() {
+        pyramid.decimate(time, start, end, pixels, decimation);
+        return decimation;
+    }
+
+    @Benchmark
+    public Decimation decimateOnePercent() {
+        double middle = (start + end) / 2;
+        double halfWidth = (end - start) / 200;
+        pyramid.decimate(time, middle - halfWidth, middle + halfWidth, pixels, decimation);
+        return decimation;
+    }
+
+    /**
+     * Zoomed in to check one short event, which should cost the same however long the recording is.
+     */
+    @Benchmark
+    public Decimation decimateEventWindow() {
+        double middle = (start + end) / 2;
+        pyramid.decimate(time, middle, middle + EVENT_WINDOW_SECONDS, pixels, decimation);
+        return decimation;
+    }
+
+    /**
+     * What a chart pays on every zoom step: the dataset re-samples and notifies its listeners.
+     */
+    @Benchmark
+    public int updateDecimatedDataset() {
+        // alternate between two ranges so the dataset can't skip the work as unchanged
+        zoomed = !zoomed;
+        double to = zoomed ? (start + end) / 2 : end;
+        dataset.update(start, to, pixels);
+        return dataset.getItemCount(0);
+    }
+
+    @Benchmark
+    public double readFullResolutionDataset() {
+        double sum = 0;
+        int items = fullDataset.getItemCount(0);
+        for(int i = 0; i < items; i++) {
+            sum += fullDataset.getXValue(0, i) + fullDataset.getYValue(0, i);
+        }
+        return sum;
+    }
+}
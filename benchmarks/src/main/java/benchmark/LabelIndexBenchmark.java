@@ -0,0 +1,81 @@
+package benchmark;
+
+import model.LabelIndex;
+import model.TimeLabel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding labels to an index of a given size and finding the labels overlapping a screen-sized window, which is what
+ * every redraw of the waveforms does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabelIndexBenchmark {
+    private static final double RECORDING_SECONDS = 24 * 60 * 60;
+    private static final double MAX_LABEL_SECONDS = 30;
+    private static final double WINDOW_SECONDS = 60;
+
+    @Param({"1000", "100000", "1000000"})
+    public int labels;
+
+    private LabelIndex index;
+    private TimeLabel[] queued;
+    private int next;
+    private Random random;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        random = new Random(labels);
+        index = new LabelIndex();
+        for(int i = 0; i < labels; i++) {
+            index.add(randomLabel());
+        }
+        queued = new TimeLabel[1 << 16];
+        for(int i = 0; i < queued.length; i++) {
+            queued[i] = randomLabel();
+        }
+        next = 0;
+        // build the search tree outside the measurement
+        index.query(0, 0);
+    }
+
+    private TimeLabel randomLabel() {
+        double start = random.nextDouble() * RECORDING_SECONDS;
+        return new TimeLabel(start, start + random.nextDouble() * MAX_LABEL_SECONDS);
+    }
+
+    /**
+     * One insert into an index of about {@code labels} labels; the removal keeps the size steady.
+     */
+    @Benchmark
+    public boolean addAndRemove() {
+        TimeLabel label = queued[next++ & (queued.length - 1)];
+        index.add(label);
+        return index.remove(label);
+    }
+
+    @Benchmark
+    public void queryWindow(Blackhole blackhole) {
+        double from = random.nextDouble() * (RECORDING_SECONDS - WINDOW_SECONDS);
+        index.query(from, from + WINDOW_SECONDS, blackhole::consume);
+    }
+}
@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Writes logger-like CSV files: a uniformly sampled time column followed by noisy sine waves. Files are kept in the
+ * temporary directory between runs since the large ones take longer to write than to parse.
+ */
+public class SyntheticCsv {
+    public static final String TIME_COLUMN = "time";
+    public static final double SAMPLE_RATE = 1000;
+
+    public static File get(int rows, int columns) throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "labelme-bench-" + rows + "x" + columns + ".csv");
+        if(!file.isFile()) {
+            File temporary = new File(file.getPath() + ".tmp");
+            write(temporary, rows, columns);
+            if(!temporary.renameTo(file)) {
+                throw new IOException("Could not move " + temporary + " to " + file);
+            }
+        }
+        return file;
+    }
+
+    public static String column(int index) {
+        return "signal" + index;
+    }
+
+    private static void write(File file, int rows, int columns) throws IOException {
+        Random random = new Random(rows);
+        try(BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.US_ASCII)) {
+            writer.write(TIME_COLUMN);
+            for(int column = 0; column < columns; column++) {
+                writer.write(',');
+                writer.write(column(column));
+            }
+            writer.write('\n');
+            for(int row = 0; row < rows; row++) {
+                double time = row / SAMPLE_RATE;
+                writer.write(Double.toString(time));
+                for(int column = 0; column < columns; column++) {
+                    double value = Math.sin(time * (column + 1)) + random.nextGaussian() * 0.05;
+                    writer.write(',');
+                    writer.write(Float.toString((float) value));
+                }
+                writer.write('\n');
+            }
+        }
+    }
+}
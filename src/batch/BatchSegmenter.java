@@ -0,0 +1,307 @@
+package batch;
+
+import model.ExactColumn;
+import model.LabelImporter;
+import model.SampleColumn;
+import model.TimeLabel;
+import model.WaveformFile;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless entry point that cuts the labeled intervals out of a directory of recordings, for training models on them.
+ * Every {@code name.csv} with a label file {@code name.labels.csv} (as written by File > Export Labels) becomes
+ * {@code name.segments.csv} in the output directory, holding the rows inside each label, or inside fixed-size windows
+ * sliding across each label, tagged with the label and window they belong to.
+ *
+ * Recordings are processed in parallel on a fork-join pool of {@code --threads} workers, and each one is parsed,
+ * written out row by row and dropped before the worker takes the next, so memory use depends on the number of
+ * threads and not on the number of recordings.
+ *
+ * <pre>
+ * java -cp labelme.jar:lib/* batch.BatchSegmenter --input recordings --output segments \
+ *         [--labels labels] [--time-column time] [--window 2.0 [--step 1.0]] [--threads 8] [--cache]
+ * </pre>
+ */
+public class BatchSegmenter {
+    private static final String LABEL_SUFFIX = ".labels.csv";
+    private static final String OUTPUT_SUFFIX = ".segments.csv";
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final File inputDirectory;
+    private final File labelDirectory;
+    private final File outputDirectory;
+    private final String timeColumn;
+    private final double window;
+    private final double step;
+    private final AtomicInteger finished = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public BatchSegmenter(File inputDirectory, File labelDirectory, File outputDirectory, String timeColumn,
+                          double window, double step) {
+        this.inputDirectory = inputDirectory;
+        this.labelDirectory = labelDirectory;
+        this.outputDirectory = outputDirectory;
+        this.timeColumn = timeColumn;
+        this.window = window;
+        this.step = step;
+    }
+
+    public static void main(String[] args) {
+        File input = null;
+        File labels = null;
+        File output = null;
+        String timeColumn = "time";
+        double window = 0;
+        double step = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean cache = false;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                switch(args[i]) {
+                    case "--input":
+                        input = new File(args[++i]);
+                        break;
+                    case "--labels":
+                        labels = new File(args[++i]);
+                        break;
+                    case "--output":
+                        output = new File(args[++i]);
+                        break;
+                    case "--time-column":
+                        timeColumn = args[++i];
+                        break;
+                    case "--window":
+                        window = Double.parseDouble(args[++i]);
+                        break;
+                    case "--step":
+                        step = Double.parseDouble(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--cache":
+                        cache = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if(input == null || output == null) {
+                throw new IllegalArgumentException("--input and --output are required");
+            }
+            if(window < 0 || step < 0 || threads < 1) {
+                throw new IllegalArgumentException("--window, --step and --threads must be positive");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage() == null ? "Missing option value" : e.getMessage());
+            System.err.println("Usage: BatchSegmenter --input DIR --output DIR [--labels DIR] [--time-column NAME] "
+                    + "[--window SECONDS [--step SECONDS]] [--threads N] [--cache]");
+            System.exit(2);
+            return;
+        }
+
+        // a nightly run over thousands of recordings shouldn't fill the cache directory unless asked to
+        if(!cache) {
+            System.setProperty("labelme.cache", "false");
+        }
+        BatchSegmenter segmenter = new BatchSegmenter(input, labels == null ? input : labels, output, timeColumn,
+                window, step == 0 ? window : step);
+        try {
+            System.exit(segmenter.run(threads) ? 0 : 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Segment every labeled recording in the input directory.
+     *
+     * @return false if any recording failed; the others are still written
+     */
+    public boolean run(int threads) throws IOException {
+        File[] recordings = inputDirectory.listFiles((directory, name) ->
+                name.toLowerCase().endsWith(".csv") && !name.endsWith(LABEL_SUFFIX) && !name.endsWith(OUTPUT_SUFFIX));
+        if(recordings == null) {
+            throw new IOException(inputDirectory + " is not a directory");
+        }
+        if(!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not create output directory " + outputDirectory);
+        }
+        List<File> labeled = new ArrayList<>();
+        for(File recording : recordings) {
+            if(labelFile(recording).isFile()) {
+                labeled.add(recording);
+            } else {
+                System.err.println("Skipping " + recording.getName() + ": no " + labelFile(recording).getName());
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new SegmentTask(labeled, 0, labeled.size()));
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.err.println(String.format("Segmented %d of %d recordings", labeled.size() - failed.get(),
+                labeled.size()));
+        return failed.get() == 0;
+    }
+
+    private File labelFile(File recording) {
+        String name = recording.getName();
+        return new File(labelDirectory, name.substring(0, name.length() - ".csv".length()) + LABEL_SUFFIX);
+    }
+
+    private File outputFile(File recording) {
+        String name = recording.getName();
+        return new File(outputDirectory, name.substring(0, name.length() - ".csv".length()) + OUTPUT_SUFFIX);
+    }
+
+    private void segment(File recording, int total) {
+        long start = System.nanoTime();
+        File output = outputFile(recording);
+        File temporary = new File(output.getPath() + ".tmp");
+        try {
+            List<TimeLabel> labels = LabelImporter.readCsv(labelFile(recording));
+            labels.sort(Comparator.comparingDouble(TimeLabel::getStart));
+            WaveformFile waveformFile = new WaveformFile(recording, timeColumn);
+            long rows;
+            try(BufferedWriter writer = new BufferedWriter(Files.newBufferedWriter(temporary.toPath(),
+                    StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)) {
+                rows = write(waveformFile, labels, writer);
+            }
+            Files.move(temporary.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            System.err.println(String.format("[%d/%d] %s: %d labels, %d rows in %.1f s", finished.incrementAndGet(),
+                    total, recording.getName(), labels.size(), rows, (System.nanoTime() - start) / 1e9));
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            finished.incrementAndGet();
+            temporary.delete();
+            System.err.println("Failed " + recording.getName() + ": " + e);
+        }
+    }
+
+    /**
+     * Write the rows of every label, or of every window within each label, as they are read.
+     *
+     * @return the number of rows written
+     */
+    private long write(WaveformFile waveformFile, List<TimeLabel> labels, Writer writer) throws IOException {
+        String[] headers = waveformFile.getColumnHeaders().toArray(new String[0]);
+        SampleColumn[] columns = new SampleColumn[headers.length];
+        for(int i = 0; i < headers.length; i++) {
+            columns[i] = waveformFile.getColumn(headers[i]);
+        }
+        writer.write("label_id,label,window");
+        for(String header : headers) {
+            writer.write(',');
+            writer.write(header);
+        }
+        writer.write('\n');
+
+        long rows = 0;
+        for(TimeLabel label : labels) {
+            String prefix = label.getId() + "," + csvField(label.getName()) + ",";
+            if(window <= 0) {
+                rows += writeRows(waveformFile, columns, label.getStart(), label.getEnd(), true, prefix + "0",
+                        writer);
+                continue;
+            }
+            int index = 0;
+            for(double from = label.getStart(); from + window <= label.getEnd() + 1e-9; from += step) {
+                rows += writeRows(waveformFile, columns, from, from + window, false, prefix + index, writer);
+                index++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Write the rows whose time is in [from, to), or [from, to] if {@code inclusive}.
+     */
+    private static long writeRows(WaveformFile waveformFile, SampleColumn[] columns, double from, double to,
+                                  boolean inclusive, String prefix, Writer writer) throws IOException {
+        int first = waveformFile.indexAtOrAfter(from);
+        int last = inclusive ? waveformFile.indexAt(to) + 1 : waveformFile.indexAtOrAfter(to);
+        for(int row = first; row < last; row++) {
+            writer.write(prefix);
+            for(SampleColumn column : columns) {
+                writer.write(',');
+                writeValue(column, row, writer);
+            }
+            writer.write('\n');
+        }
+        return Math.max(0, last - first);
+    }
+
+    /**
+     * Write a sample as precisely as it is kept: exact columns, such as the time column, from their ticks so large
+     * times like epoch seconds keep every digit, and float columns as floats.
+     */
+    private static void writeValue(SampleColumn column, int row, Writer writer) throws IOException {
+        if(column instanceof ExactColumn) {
+            ExactColumn exact = (ExactColumn) column;
+            writer.write(BigDecimal.valueOf(exact.getTick(row), exact.getDecimals()).toPlainString());
+            return;
+        }
+        float value = column.get(row);
+        double precise = column.getDouble(row);
+        // columns read back from the cache keep exact ticks without being an ExactColumn
+        if(precise == value || Double.isNaN(precise) || Double.isInfinite(precise)) {
+            writer.write(Float.toString(value));
+        } else {
+            writer.write(BigDecimal.valueOf(precise).toPlainString());
+        }
+    }
+
+    private static String csvField(String value) {
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private class SegmentTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> recordings;
+        private final int from;
+        private final int to;
+
+        SegmentTask(List<File> recordings, int from, int to) {
+            this.recordings = recordings;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                segment(recordings.get(from), recordings.size());
+            } else if(to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SegmentTask(recordings, from, middle), new SegmentTask(recordings, middle, to));
+            }
+        }
+    }
+}
@@ -1,23 +1,28 @@
 package controller;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
+import javafx.geometry.Point2D;
 import javafx.scene.Node;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
@@ -28,29 +33,61 @@ import javafx.stage.Stage;
 import javafx.util.Callback;
 import javafx.util.Duration;
 import javafx.util.Pair;
+import metrics.ChartBuildEvent;
+import metrics.CursorUpdateEvent;
+import metrics.Metrics;
+import model.Aligner;
+import model.ColumnIndex;
+import model.CsvParser;
+import model.CsvTailer;
+import model.FeatureExtractor;
+import model.LabelExporter;
+import model.LabelFeatures;
+import model.LabelIndex;
+import model.LabelJournal;
+import model.Mp4FrameIndex;
+import model.StreamingWaveformFile;
+import model.TimeLabel;
+import model.TimeRange;
+import model.WaveformColumn;
 import model.WaveformFile;
-import org.jfree.chart.ChartFactory;
-import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.NumberTickUnitSource;
-import org.jfree.chart.fx.ChartViewer;
-import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.data.xy.XYDataset;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
-import view.MarkeredLineChart;
+import org.jfree.data.Range;
+import view.ChartTrack;
+import view.FeatureWindow;
+import view.MetricsOverlay;
 import view.MixedTreeCell;
+import view.TimeCursor;
 import view.UserInterfaceElements;
+import view.WaveformFileTreeItem;
+import view.WaveformTrackView;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.InvalidKeyException;
-import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Controller implements Initializable {
+    private static final long STREAM_REFRESH_NANOS = 1_000_000_000L / Math.max(1,
+            Integer.getInteger("labelme.streamRefreshHz", 10));
+    // files with more columns than this, or searches matching more, start out collapsed in the resource tree
+    private static final int AUTO_EXPAND_COLUMNS = 50;
 
+    // used to step videos whose frames couldn't be indexed
     private final Duration STEP_DURATION = Duration.millis(1000);
+    // "jfreechart" falls back to one ChartViewer per column instead of the shared canvas
+    private final boolean USE_CHART_VIEWERS = "jfreechart".equals(System.getProperty("labelme.renderer"));
 
     @FXML private BorderPane rootPane;
     @FXML private BorderPane mediaViewContainer;
@@ -58,14 +95,68 @@ public class Controller implements Initializable {
     @FXML private Text videoTime;
     @FXML private VBox waveformList;
     @FXML private TreeView resourceTree;
+    @FXML private TextField resourceFilter;
     @FXML private ScrollPane waveformScroller;
+    @FXML private ProgressBar loadProgress;
+    @FXML private Text loadStatus;
+    @FXML private Button cancelLoadButton;
+    @FXML private MetricsOverlay metricsOverlay;
+    @FXML private Button previousKeyframeButton;
+    @FXML private Button nextKeyframeButton;
 
     private Stage stage;
     private MediaPlayer mediaPlayer;
+    private Mp4FrameIndex frameIndex;
+    // where the last step went; seeks are asynchronous, so the player may not report it yet when stepping again
+    private double steppedTo = Double.NaN;
     private UserInterfaceElements ui;
-
-    private Map<String, WaveformFile> waveformFiles;
-    private List<XYChart.Data<Float, Float>> labelList;
+    private WaveformTrackView trackView;
+    // what every waveform view shows; zooming or panning one of them moves the others
+    private final TimeRange timeRange = new TimeRange();
+
+    private final ColumnIndex columnIndex = new ColumnIndex();
+    private final List<WaveformFileTreeItem> fileItems = new ArrayList<>();
+    // the root of resourceTree, whose children are the files the filter lets through
+    private TreeItem<String> resourceRoot;
+    private LabelIndex labels;
+    private LabelJournal labelJournal;
+
+    private ExecutorService loaderExecutor;
+    private ExecutorService featureExecutor;
+    private ExecutorService streamExecutor;
+    private ExecutorService videoIndexExecutor;
+    private final List<FeatureExtractor> featureExtractors = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean featureUpdatePending = new AtomicBoolean();
+    private FeatureWindow featureWindow;
+    private volatile boolean featuresShowing = false;
+    private boolean videoTimeChanged = false;
+    private long videoTimeChangedAt;
+    private final AnimationTimer cursorTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if(videoTimeChanged && mediaPlayer != null) {
+                videoTimeChanged = false;
+                applyVideoTime();
+            }
+        }
+    };
+    private Task<?> currentLoader;
+    private final List<StreamingWaveformFile> streams = new ArrayList<>();
+    // rows arrive whenever the logger writes them, but views only take them in at most STREAM_REFRESH_NANOS apart
+    private final AnimationTimer streamTimer = new AnimationTimer() {
+        private long lastRefresh = 0;
+
+        @Override
+        public void handle(long now) {
+            if(now - lastRefresh < STREAM_REFRESH_NANOS) {
+                return;
+            }
+            lastRefresh = now;
+            for(StreamingWaveformFile stream : streams) {
+                stream.update();
+            }
+        }
+    };
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -76,9 +167,9 @@ public class Controller implements Initializable {
 
         ui = UserInterfaceElements.getInstance(this);
 
-        TreeItem<String> rootItem = new TreeItem<>("Resources");
-        rootItem.setExpanded(true);
-        resourceTree.setRoot(rootItem);
+        resourceRoot = new TreeItem<>("Resources");
+        resourceRoot.setExpanded(true);
+        resourceTree.setRoot(resourceRoot);
         resourceTree.setEditable(true);
         resourceTree.setCellFactory(new Callback<TreeView<String>, MixedTreeCell>() {
             @Override
@@ -90,36 +181,82 @@ public class Controller implements Initializable {
                 new EventHandler<CheckBoxTreeItem.TreeModificationEvent<Object>>() {
             @Override
             public void handle(CheckBoxTreeItem.TreeModificationEvent<Object> event) {
-                String selectedFilename = (String) event.getTreeItem().getParent().getValue();
-                String selectedColumnHeader = (String) event.getTreeItem().getValue();
-                WaveformFile selectedWaveform = waveformFiles.get(selectedFilename);
+                Object item = event.getTreeItem();
+                if(!(item instanceof WaveformFileTreeItem.ColumnItem)) {
+                    return;
+                }
+                WaveformColumn column = ((WaveformFileTreeItem.ColumnItem) item).getColumn();
                 if(event.getTreeItem().isSelected()) {
-                    insertWaveform(selectedColumnHeader, selectedWaveform);
+                    insertWaveform(column.getName(), column.getFile());
                 } else {
-                    removeWaveform(selectedColumnHeader, selectedWaveform);
+                    removeWaveform(column.getName(), column.getFile());
                 }
             }
         });
         resourceTree.getRoot().addEventHandler(TreeItem.valueChangedEvent(), new EventHandler<TreeItem.TreeModificationEvent<Object>>() {
             @Override
             public void handle(TreeItem.TreeModificationEvent<Object> event) {
-                String selectedFilename = (String) event.getTreeItem().getParent().getValue();
-                waveformFiles.get(selectedFilename).setOffsetTime(Float.parseFloat(
-                        event.getTreeItem().getValue().toString()));
+                Object parent = event.getTreeItem().getParent();
+                if(parent instanceof WaveformFileTreeItem
+                        && ((WaveformFileTreeItem) parent).getOffsetItem() == (Object) event.getTreeItem()) {
+                    ((WaveformFileTreeItem) parent).getFile().setOffsetTime(Double.parseDouble(
+                            event.getTreeItem().getValue().toString()));
+                }
             }
         });
+        resourceFilter.textProperty().addListener((observable, oldValue, newValue) -> filterResourceTree(newValue));
 
-        waveformFiles = new LinkedHashMap<>();
-        labelList = new LinkedList<>();
+        labels = new LabelIndex();
+        try {
+            labelJournal = new LabelJournal(labels);
+        } catch (IOException e) {
+            // labels still work, they just won't be saved
+            e.printStackTrace();
+        }
+        loaderExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "waveform-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        streamExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "stream-opener");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // its own thread, so stepping by frames doesn't wait for whatever recordings are loading
+        videoIndexExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "video-indexer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        featureExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "feature-extractor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        labels.addChangeListener(this::scheduleFeatureUpdate);
 
         waveformList.addEventHandler(MouseEvent.MOUSE_CLICKED, new EventHandler<MouseEvent>() {
             @Override
             public void handle(MouseEvent event) {
-                if(event.getButton() == MouseButton.PRIMARY) {
+                // a drag pans the view rather than seeking
+                if(event.getButton() == MouseButton.PRIMARY && event.isStillSincePress()) {
                     if(ui.getWaveformListContextMenu().isShowing()) {
                         ui.getWaveformListContextMenu().hide();
                     } else {
-                        // TODO move waveform time ticker
+                        seekToWaveformTime(event);
                     }
                 } else if(event.getButton() == MouseButton.SECONDARY) {
                     ui.getWaveformListContextMenu().show(waveformList, event.getScreenX(), event.getScreenY());
@@ -128,12 +265,200 @@ public class Controller implements Initializable {
         });
         waveformScroller.setFitToWidth(true);
         waveformScroller.setFitToHeight(true);
+        cursorTimer.start();
+
+        if(!USE_CHART_VIEWERS) {
+            // scrolls its own lanes, so it fills the viewport rather than growing the scroll pane
+            trackView = new WaveformTrackView(timeRange, loaderExecutor);
+            trackView.setLabels(labels);
+            trackView.setOnTrackFailed((track, failure) -> new Alert(Alert.AlertType.ERROR, "Could not plot "
+                    + track.getTitle() + ": " + (failure.getMessage() != null ? failure.getMessage()
+                    : failure.toString())).showAndWait());
+            VBox.setVgrow(trackView, Priority.ALWAYS);
+            waveformList.getChildren().add(trackView);
+        } else {
+            waveformScroller.vvalueProperty().addListener(observable -> updateChartVisibility());
+            waveformScroller.viewportBoundsProperty().addListener(observable -> updateChartVisibility());
+            waveformList.heightProperty().addListener(observable -> updateChartVisibility());
+        }
+    }
+
+    /**
+     * Move playback, and with it every waveform cursor, to the time clicked on in the track view.
+     */
+    private void seekToWaveformTime(MouseEvent event) {
+        if(trackView == null || mediaPlayer == null) {
+            return;
+        }
+        Point2D point = trackView.sceneToLocal(event.getSceneX(), event.getSceneY());
+        double time = trackView.timeAt(point.getX());
+        if(point.getY() < 0 || point.getY() > trackView.getHeight() || !(time >= 0)) {
+            return;
+        }
+        seekVideo(time);
+    }
+
+    public void addLabel(TimeLabel label) {
+        if(labelJournal != null) {
+            labelJournal.add(label);
+        } else {
+            labels.add(label);
+        }
+    }
+
+    /**
+     * Save anything the label journal still has queued. Called as the application exits.
+     */
+    protected void shutdown() {
+        streamTimer.stop();
+        for(StreamingWaveformFile stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if(labelJournal != null) {
+            try {
+                labelJournal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @FXML
+    private void showLabelFeatures() {
+        if(featureWindow == null) {
+            featureWindow = new FeatureWindow();
+            featureWindow.initOwner(stage);
+            featureWindow.showingProperty().addListener((observable, oldValue, newValue) -> {
+                featuresShowing = newValue;
+                scheduleFeatureUpdate();
+            });
+            featureWindow.setOnExport(event -> exportLabelFeatures());
+        }
+        featureWindow.show();
+        featureWindow.toFront();
+    }
+
+    /**
+     * Bring the feature table up to date in the background. Only new or changed labels are computed, and any number
+     * of requests while an update is queued result in one update.
+     */
+    private void scheduleFeatureUpdate() {
+        if(!featuresShowing || !featureUpdatePending.compareAndSet(false, true)) {
+            return;
+        }
+        featureExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                featureUpdatePending.set(false);
+                List<LabelFeatures> features = new ArrayList<>();
+                for(FeatureExtractor extractor : featureExtractors) {
+                    features.addAll(extractor.update(labels));
+                }
+                Platform.runLater(() -> featureWindow.setFeatures(features));
+            }
+        });
+    }
+
+    private void exportLabelFeatures() {
+        File file = ui.getFeatureExportFileChooser().showSaveDialog(featureWindow);
+        if(file != null) {
+            List<LabelFeatures> features = new ArrayList<>(featureWindow.getFeatures());
+            featureExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try(BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                        FeatureExtractor.writeCsv(features, writer);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
     }
 
-    public void addLabel(XYChart.Data<Float, Float> label) {
-        labelList.add(label);
-        for(WaveformFile waveformFile : waveformFiles.values()) {
-            waveformFile.addLabel(label);
+    /**
+     * Shift every other file so it lines up with the column selected in the resource tree. Each file is aligned by
+     * its first checked column, or else by its column of the same name as the selected one.
+     */
+    @FXML
+    private void autoAlignFiles() {
+        Object selected = resourceTree.getSelectionModel().getSelectedItem();
+        if(!(selected instanceof WaveformFileTreeItem.ColumnItem)) {
+            new Alert(Alert.AlertType.INFORMATION, "Select the column to align the other files to.").showAndWait();
+            return;
+        }
+        WaveformColumn reference = ((WaveformFileTreeItem.ColumnItem) selected).getColumn();
+        List<WaveformFileTreeItem> aligned = new ArrayList<>();
+        List<WaveformColumn> columns = new ArrayList<>();
+        for(WaveformFileTreeItem fileItem : fileItems) {
+            WaveformFile file = fileItem.getFile();
+            // a stream's samples change under the aligner, and its offset follows the clock anyway
+            if(file == reference.getFile() || file instanceof StreamingWaveformFile) {
+                continue;
+            }
+            List<WaveformColumn> checked = fileItem.getCheckedColumns();
+            WaveformColumn column = checked.isEmpty() ? null : checked.get(0);
+            if(column == null) {
+                for(WaveformColumn candidate : columnIndex.search(reference.getName())) {
+                    if(candidate.getFile() == file && candidate.getName().equals(reference.getName())) {
+                        column = candidate;
+                        break;
+                    }
+                }
+            }
+            if(column != null) {
+                aligned.add(fileItem);
+                columns.add(column);
+            }
+        }
+        if(columns.isEmpty()) {
+            new Alert(Alert.AlertType.INFORMATION, "No other file has a checked column or a column named "
+                    + reference.getName() + " to align.").showAndWait();
+            return;
+        }
+        featureExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                double[] offsets = Aligner.estimateOffsets(reference, columns);
+                Platform.runLater(() -> {
+                    StringBuilder failed = new StringBuilder();
+                    for(int i = 0; i < offsets.length; i++) {
+                        if(Double.isNaN(offsets[i])) {
+                            failed.append('\n').append(columns.get(i));
+                            continue;
+                        }
+                        // shown in the offset item as if typed in, which sets the same offset again
+                        WaveformFileTreeItem fileItem = aligned.get(i);
+                        fileItem.getFile().setOffsetTime(offsets[i]);
+                        fileItem.getOffsetItem().setValue(fileItem.getFile().getFormattedOffsetTime());
+                    }
+                    if(failed.length() > 0) {
+                        new Alert(Alert.AlertType.WARNING, "Could not align these to " + reference
+                                + ", they are too short or flat:" + failed).showAndWait();
+                    }
+                });
+            }
+        });
+    }
+
+    @FXML
+    private void exportLabels() {
+        File file = ui.getLabelExportFileChooser().showSaveDialog(stage);
+        if(file != null) {
+            loaderExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        LabelExporter.export(labels, file);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
         }
     }
 
@@ -143,6 +468,7 @@ public class Controller implements Initializable {
 
     @FXML
     private void playVideo() {
+        steppedTo = Double.NaN;
         mediaPlayer.play();
     }
 
@@ -153,75 +479,172 @@ public class Controller implements Initializable {
 
     @FXML
     private void stepForwardVideo() {
-        mediaPlayer.seek(mediaPlayer.getCurrentTime().add(STEP_DURATION));
-        updateVideoTime();
+        if(frameIndex != null) {
+            seekVideo(frameIndex.nextFrame(getStepStart()));
+        } else {
+            seekVideo(getStepStart() + STEP_DURATION.toSeconds());
+        }
     }
 
     @FXML
     private void stepBackwardVideo() {
-        mediaPlayer.seek(mediaPlayer.getCurrentTime().subtract(STEP_DURATION));
+        if(frameIndex != null) {
+            seekVideo(frameIndex.previousFrame(getStepStart()));
+        } else {
+            seekVideo(Math.max(0, getStepStart() - STEP_DURATION.toSeconds()));
+        }
+    }
+
+    @FXML
+    private void stepForwardKeyframe() {
+        if(frameIndex != null) {
+            seekVideo(frameIndex.nextKeyframe(getStepStart()));
+        }
+    }
+
+    @FXML
+    private void stepBackwardKeyframe() {
+        if(frameIndex != null) {
+            seekVideo(frameIndex.previousKeyframe(getStepStart()));
+        }
+    }
+
+    private double getStepStart() {
+        return Double.isNaN(steppedTo) ? mediaPlayer.getCurrentTime().toSeconds() : steppedTo;
+    }
+
+    private void seekVideo(double seconds) {
+        steppedTo = mediaPlayer.getStatus() == MediaPlayer.Status.PLAYING ? Double.NaN : seconds;
+        mediaPlayer.seek(Duration.seconds(seconds));
         updateVideoTime();
     }
 
+    /**
+     * The start of the video frame closest to {@code seconds}, or {@code seconds} itself if no video with indexed
+     * frames is open.
+     */
+    public double snapToVideoFrame(double seconds) {
+        return frameIndex == null ? seconds : frameIndex.snap(seconds);
+    }
+
+    public boolean hasVideoFrames() {
+        return frameIndex != null;
+    }
+
+    /**
+     * Mark the playback time as changed. The text and the waveform cursors are updated at most once per pulse by
+     * {@link #cursorTimer}, however often the media player reports a new time.
+     */
     private void updateVideoTime() {
-        videoTime.setText(String.format("%1$.3f / %2$.3f",
-                mediaPlayer.getCurrentTime().toSeconds(),
-                mediaPlayer.getTotalDuration().toSeconds()));
+        if(!videoTimeChanged) {
+            videoTimeChangedAt = System.nanoTime();
+        }
+        videoTimeChanged = true;
+    }
 
+    private void applyVideoTime() {
+        double currentTime = mediaPlayer.getCurrentTime().toSeconds();
+        String text = String.format("%1$.3f / %2$.3f", currentTime, mediaPlayer.getTotalDuration().toSeconds());
+        if(frameIndex != null) {
+            text += String.format(" (frame %d of %d)", frameIndex.frameAt(currentTime) + 1,
+                    frameIndex.getFrameCount());
+        }
+        videoTime.setText(text);
+
+        // follow playback once the cursor runs off the visible range
+        if(mediaPlayer.getStatus() == MediaPlayer.Status.PLAYING) {
+            timeRange.reveal(currentTime);
+        }
         for(Node node : waveformList.getChildren()) {
-            MarkeredLineChart waveform = (MarkeredLineChart) node;
-            waveform.updateTime((float) mediaPlayer.getCurrentTime().toSeconds());
-            waveform.layoutPlotChildren();
+            if(node instanceof TimeCursor) {
+                ((TimeCursor) node).setCursorTime(currentTime);
+            }
+        }
+
+        // from the player reporting the time to every cursor having moved
+        long latency = System.nanoTime() - videoTimeChangedAt;
+        Metrics.CURSOR_LATENCY.record(latency / Metrics.NANOS_PER_MILLI);
+        CursorUpdateEvent event = new CursorUpdateEvent();
+        if(event.shouldCommit()) {
+            event.playbackSeconds = currentTime;
+            event.latency = latency;
+            event.commit();
         }
     }
 
+    @FXML
+    private void togglePerformanceOverlay(ActionEvent event) {
+        metricsOverlay.setShowing(((CheckMenuItem) event.getSource()).isSelected());
+    }
+
     private void insertWaveform(String column, WaveformFile waveformFile) {
+        if(trackView != null) {
+            // the view builds the column's pyramid later, off this thread, and records that build itself
+            try {
+                trackView.addTrack(waveformFile, column);
+            } catch (InvalidKeyException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        ChartBuildEvent event = new ChartBuildEvent();
+        event.begin();
+        long start = System.nanoTime();
+        insertChartViewer(column, waveformFile);
+        Metrics.CHART_BUILD.record((System.nanoTime() - start) / Metrics.NANOS_PER_MILLI);
+        event.file = waveformFile.getFilename();
+        event.column = column;
+        event.renderer = "jfreechart";
+        event.commit();
+    }
+
+    private void insertChartViewer(String column, WaveformFile waveformFile) {
         try {
-            long start = System.currentTimeMillis();
-            XYSeries series = waveformFile.getWaveform(column, rootPane);
-            long stop = System.currentTimeMillis();
-            System.out.println("1: " + (stop-start));
-
-            start = System.currentTimeMillis();
-            XYDataset dataset = new XYSeriesCollection(series);
-            stop = System.currentTimeMillis();
-            System.out.println("1b: " + (stop-start));
-
-            start = System.currentTimeMillis();
-            JFreeChart lineChart = ChartFactory.createXYLineChart(
-                    "hi",
-                    "Category",
-                    "Score",
-                    dataset,
-                    PlotOrientation.VERTICAL,
-                    false, false, false);
-            stop = System.currentTimeMillis();
-            System.out.println("2: " + (stop-start));
-
-            start = System.currentTimeMillis();
-            ChartViewer viewer = new ChartViewer(lineChart);
-            stop = System.currentTimeMillis();
-            System.out.println("3: " + (stop-start));
-
-            viewer.prefWidthProperty().bind(waveformList.prefWidthProperty());
-
-            start = System.currentTimeMillis();
-            waveformList.getChildren().add(viewer);
-            stop = System.currentTimeMillis();
-            System.out.println("4: " + (stop-start));
+            ChartTrack track = new ChartTrack(waveformFile, column, timeRange, labels);
+            track.getViewer().prefWidthProperty().bind(waveformList.prefWidthProperty());
+
+            // the first chart shows its whole recording, later ones join whatever the others show
+            boolean firstChart = true;
+            for(Node node : waveformList.getChildren()) {
+                firstChart &= !(node instanceof ChartTrack);
+            }
+            Range bounds = track.getDataset().getDomainBounds(false);
+            if(firstChart && bounds != null) {
+                timeRange.set(bounds.getLowerBound(), bounds.getUpperBound());
+            }
+            waveformList.getChildren().add(track);
         } catch (InvalidKeyException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Let charts scrolled out of the viewport skip redrawing until they come back.
+     */
+    private void updateChartVisibility() {
+        Bounds viewport = waveformScroller.localToScene(waveformScroller.getLayoutBounds());
+        for(Node node : waveformList.getChildren()) {
+            if(node instanceof ChartTrack) {
+                ((ChartTrack) node).setShowing(node.localToScene(node.getLayoutBounds()).intersects(viewport));
+            }
+        }
+    }
+
     private void removeWaveform(String column, WaveformFile waveformFile) {
-        /*
-        try {
-            waveformList.getChildren().remove(waveformFile.getWaveform(column, rootPane));
-        } catch (InvalidKeyException e) {
-            e.printStackTrace();
+        if(trackView != null) {
+            trackView.removeTrack(waveformFile, column);
+        } else {
+            Iterator<Node> iterator = waveformList.getChildren().iterator();
+            while(iterator.hasNext()) {
+                Node node = iterator.next();
+                if(node instanceof ChartTrack && ((ChartTrack) node).getFile() == waveformFile
+                        && ((ChartTrack) node).getColumn().equals(column)) {
+                    ((ChartTrack) node).dispose();
+                    iterator.remove();
+                }
+            }
         }
-        */
+        waveformFile.releaseColumn(column);
     }
 
     @FXML
@@ -232,6 +655,22 @@ public class Controller implements Initializable {
             final Media videoMedia = new Media(videoFile.toURI().toString());
             mediaPlayer = new MediaPlayer(videoMedia);
             mediaView.setMediaPlayer(mediaPlayer);
+            steppedTo = Double.NaN;
+            setFrameIndex(null);
+            MediaPlayer player = mediaPlayer;
+            videoIndexExecutor.execute(() -> {
+                try {
+                    Mp4FrameIndex index = Mp4FrameIndex.read(videoFile);
+                    Platform.runLater(() -> {
+                        if(mediaPlayer == player) {
+                            setFrameIndex(index);
+                        }
+                    });
+                } catch (IOException e) {
+                    // stepping falls back to fixed steps
+                    e.printStackTrace();
+                }
+            });
             mediaPlayer.currentTimeProperty().addListener(new ChangeListener<Duration>() {
                 @Override
                 public void changed(ObservableValue<? extends Duration> observable, Duration oldValue, Duration newValue) {
@@ -241,17 +680,49 @@ public class Controller implements Initializable {
         }
     }
 
+    private void setFrameIndex(Mp4FrameIndex index) {
+        frameIndex = index;
+        previousKeyframeButton.setDisable(index == null);
+        nextKeyframeButton.setDisable(index == null);
+    }
+
     private void addWaveformToResourceTree(WaveformFile waveformFile) {
-        TreeItem<String> fileItem = new TreeItem<>(waveformFile.getFilename());
-        TreeItem<String> resourceTimeItem = new TreeItem<>(waveformFile.getFormattedOffsetTime());
-        fileItem.getChildren().add(resourceTimeItem);
+        WaveformFileTreeItem fileItem = new WaveformFileTreeItem(waveformFile, columnIndex.addFile(waveformFile));
+        // a file with thousands of columns stays closed until asked for
+        fileItem.setExpanded(waveformFile.getNumColumns() <= AUTO_EXPAND_COLUMNS);
+        fileItems.add(fileItem);
+        filterResourceTree(resourceFilter.getText());
+    }
 
-        fileItem.setExpanded(true);
-        for(String columnHeader : waveformFile.getColumnHeaders()) {
-            CheckBoxTreeItem<String> columnName = new CheckBoxTreeItem<>(columnHeader);
-            fileItem.getChildren().add(columnName);
+    /**
+     * Show only the columns whose names contain {@code text}, and only the files that have any.
+     */
+    private void filterResourceTree(String text) {
+        if(text == null || text.trim().isEmpty()) {
+            for(WaveformFileTreeItem fileItem : fileItems) {
+                fileItem.setFilter(null);
+            }
+            resourceRoot.getChildren().setAll(fileItems);
+            return;
+        }
+        List<WaveformColumn> matches = columnIndex.search(text);
+        Map<WaveformFile, BitSet> matchesByFile = new HashMap<>();
+        for(WaveformColumn column : matches) {
+            matchesByFile.computeIfAbsent(column.getFile(), file -> new BitSet()).set(column.getIndex());
+        }
+        List<WaveformFileTreeItem> shown = new ArrayList<>();
+        for(WaveformFileTreeItem fileItem : fileItems) {
+            BitSet fileMatches = matchesByFile.get(fileItem.getFile());
+            if(fileMatches != null) {
+                fileItem.setFilter(fileMatches);
+                // few enough to show them all without creating thousands of items
+                if(matches.size() <= AUTO_EXPAND_COLUMNS) {
+                    fileItem.setExpanded(true);
+                }
+                shown.add(fileItem);
+            }
         }
-        resourceTree.getRoot().getChildren().add(fileItem);
+        resourceRoot.getChildren().setAll(shown);
     }
 
     @FXML
@@ -259,33 +730,195 @@ public class Controller implements Initializable {
         File file = ui.getWaveformFileChooser().showOpenDialog(stage);
 
         if(file != null) {
+            // asked before parsing, so the time column is the one kept exact
+            String timeColumn;
             try {
-                WaveformFile waveformFile = new WaveformFile(file, "time");
-                String timeColumn = chooseTimeColumn(waveformFile);
-                if (timeColumn != null) {
+                timeColumn = chooseTimeColumn(file.getName(), CsvParser.readHeaders(file));
+            } catch (IOException e) {
+                new Alert(Alert.AlertType.ERROR, "Could not read " + file.getName() + ": " + e.getMessage())
+                        .showAndWait();
+                return;
+            }
+            if(timeColumn == null) {
+                return;
+            }
+            WaveformFileLoader loader = new WaveformFileLoader(file, timeColumn);
+            loader.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+                @Override
+                public void handle(WorkerStateEvent event) {
+                    hideLoadProgress(loader);
+                    finishOpeningWaveformFile(loader.getValue());
+                }
+            });
+            loader.setOnFailed(new EventHandler<WorkerStateEvent>() {
+                @Override
+                public void handle(WorkerStateEvent event) {
+                    hideLoadProgress(loader);
+                    loader.getException().printStackTrace();
+                }
+            });
+            loader.setOnCancelled(new EventHandler<WorkerStateEvent>() {
+                @Override
+                public void handle(WorkerStateEvent event) {
+                    hideLoadProgress(loader);
+                }
+            });
+            showLoadProgress(loader);
+            loaderExecutor.submit(loader);
+        }
+    }
+
+    /**
+     * Open a CSV file that a logger is still writing, and keep showing the rows it appends.
+     */
+    @FXML
+    private void followWaveformFile() {
+        File file = ui.getWaveformFileChooser().showOpenDialog(stage);
+        if(file != null) {
+            openStream(file.getName(), () -> CsvTailer.tail(file));
+        }
+    }
+
+    /**
+     * Show the CSV rows a logger sends over TCP.
+     */
+    @FXML
+    private void connectToWaveformStream() {
+        Optional<String> result = ui.getStreamAddressDialog().showAndWait();
+        if(!result.isPresent()) {
+            return;
+        }
+        String address = result.get().trim();
+        int colon = address.lastIndexOf(':');
+        int port;
+        try {
+            port = Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            new Alert(Alert.AlertType.ERROR, address + " is not host:port").showAndWait();
+            return;
+        }
+        String host = colon > 0 ? address.substring(0, colon) : "localhost";
+        openStream(host + ":" + port, () -> CsvTailer.connect(host, port));
+    }
+
+    /**
+     * Connect to a stream and wait for its header on a thread of its own, so a logger that is slow to answer holds up
+     * nothing else. The load progress shows it meanwhile, and cancelling it closes whatever was opened. The time
+     * column is asked for once the header is in, before the stream's columns are set up, so it is kept exact; rows
+     * that arrive meanwhile wait in the tailer.
+     */
+    private void openStream(String name, Callable<CsvTailer> source) {
+        Task<CsvTailer> opener = new Task<CsvTailer>() {
+            private volatile CsvTailer tailer;
+
+            @Override
+            protected CsvTailer call() throws Exception {
+                updateMessage("Connecting to " + name);
+                tailer = source.call();
+                if(isCancelled()) {
+                    tailer.close();
+                    return null;
+                }
+                try {
+                    updateMessage("Waiting for the header from " + name);
+                    tailer.awaitHeaders(StreamingWaveformFile.HEADER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    return tailer;
+                } catch (IOException | InterruptedException e) {
+                    tailer.close();
+                    throw e;
+                }
+            }
+
+            @Override
+            protected void cancelled() {
+                // the stream may have opened just before; nothing else will close it
+                CsvTailer opened = tailer;
+                if(opened != null) {
                     try {
-                        waveformFile.setTimeColumn(timeColumn);
-                    } catch (InvalidKeyException e) {
+                        opened.close();
+                    } catch (IOException e) {
                         e.printStackTrace();
                     }
-                    waveformFiles.put(waveformFile.getFilename(), waveformFile);
-                    addWaveformToResourceTree(waveformFile);
-                    for(XYChart.Data<Float, Float> label : labelList) {
-                        waveformFile.addLabel(label);
-                    }
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
-            } catch (ParseException e) {
-                e.printStackTrace();
-            } catch (NumberFormatException e) {
+            }
+        };
+        opener.setOnSucceeded(event -> {
+            hideLoadProgress(opener);
+            CsvTailer tailer = opener.getValue();
+            try {
+                String timeColumn = chooseTimeColumn(name, tailer.getHeaders());
+                if(timeColumn == null) {
+                    tailer.close();
+                    return;
+                }
+                StreamingWaveformFile stream = StreamingWaveformFile.open(tailer, timeColumn,
+                        StreamingWaveformFile.DEFAULT_RETENTION_SECONDS);
+                finishOpeningWaveformFile(stream);
+                streams.add(stream);
+                streamTimer.start();
+            } catch (IOException | InterruptedException e) {
                 e.printStackTrace();
             }
+        });
+        opener.setOnFailed(event -> {
+            hideLoadProgress(opener);
+            Throwable failure = opener.getException();
+            new Alert(Alert.AlertType.ERROR, "Could not open " + name + ": " + (failure.getMessage() != null
+                    ? failure.getMessage() : failure.toString())).showAndWait();
+        });
+        opener.setOnCancelled(event -> hideLoadProgress(opener));
+        showLoadProgress(opener);
+        streamExecutor.submit(opener);
+    }
+
+    @FXML
+    private void cancelWaveformLoad() {
+        if(currentLoader != null) {
+            currentLoader.cancel();
+        }
+    }
+
+    private void finishOpeningWaveformFile(WaveformFile waveformFile) {
+        // features are computed off the FX thread, which a stream's samples can change under; they are for
+        // finished recordings
+        if(!(waveformFile instanceof StreamingWaveformFile)) {
+            // registered after the extractor's own listener, so the update sees the invalidated features
+            featureExtractors.add(new FeatureExtractor(waveformFile));
+            waveformFile.addOffsetListener(this::scheduleFeatureUpdate);
+            scheduleFeatureUpdate();
+        }
+        addWaveformToResourceTree(waveformFile);
+    }
+
+    private void showLoadProgress(Task<?> loader) {
+        currentLoader = loader;
+        loadProgress.progressProperty().bind(loader.progressProperty());
+        loadStatus.textProperty().bind(loader.messageProperty());
+        setLoadProgressVisible(true);
+    }
+
+    private void hideLoadProgress(Task<?> loader) {
+        if(currentLoader != loader) {
+            return;
+        }
+        currentLoader = null;
+        loadProgress.progressProperty().unbind();
+        loadStatus.textProperty().unbind();
+        setLoadProgressVisible(false);
+    }
+
+    private void setLoadProgressVisible(boolean visible) {
+        for(Node node : new Node[] {loadProgress, loadStatus, cancelLoadButton}) {
+            node.setVisible(visible);
+            node.setManaged(visible);
         }
     }
 
-    private String chooseTimeColumn(WaveformFile waveformFile) {
-        Optional<String> result = ui.getChooseTimeColumnDialog(waveformFile).showAndWait();
+    /**
+     * @return null if the user cancelled
+     */
+    private String chooseTimeColumn(String name, String[] headers) {
+        Optional<String> result = ui.getChooseTimeColumnDialog(name, headers).showAndWait();
         if (result.isPresent()){
             return result.get();
         }
@@ -7,13 +7,13 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 public class Main extends Application {
-
+    private Controller controller;
 
     @Override
     public void start(Stage primaryStage) throws Exception {
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("../view/main_layout.fxml"));
         Parent rootPane = fxmlLoader.load();
-        Controller controller = (Controller) fxmlLoader.getController();
+        controller = (Controller) fxmlLoader.getController();
         controller.setStage(primaryStage);
         Scene scene = new Scene(rootPane);
         primaryStage.setScene(scene);
@@ -22,6 +22,13 @@ public class Main extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        if(controller != null) {
+            controller.shutdown();
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,64 @@
+package controller;
+
+import javafx.concurrent.Task;
+import metrics.Metrics;
+import metrics.WaveformLoadEvent;
+import model.CsvParser;
+import model.WaveformFile;
+
+import java.io.File;
+
+/**
+ * Background task that parses a waveform file off the JavaFX application thread, reporting bytes parsed as progress.
+ * Each load is recorded in {@link Metrics} and as a {@link WaveformLoadEvent}.
+ */
+public class WaveformFileLoader extends Task<WaveformFile> {
+    private final CsvParser parser;
+    private final String timeColumn;
+
+    public WaveformFileLoader(File file, String timeColumn) {
+        this.parser = new CsvParser(file);
+        this.timeColumn = timeColumn;
+        updateTitle("Loading " + file.getName());
+        parser.setProgressListener(new CsvParser.ProgressListener() {
+            @Override
+            public void progress(long bytesParsed, long totalBytes) {
+                updateProgress(bytesParsed, totalBytes);
+                updateMessage(String.format("Loading %1$s (%2$.1f / %3$.1f MB)", file.getName(),
+                        bytesParsed / Metrics.BYTES_PER_MEGABYTE, totalBytes / Metrics.BYTES_PER_MEGABYTE));
+            }
+        });
+    }
+
+    @Override
+    protected WaveformFile call() throws Exception {
+        WaveformLoadEvent event = new WaveformLoadEvent();
+        long start = System.nanoTime();
+        event.begin();
+        WaveformFile waveformFile = new WaveformFile(parser, timeColumn);
+        event.end();
+        double millis = (System.nanoTime() - start) / Metrics.NANOS_PER_MILLI;
+
+        long bytes = parser.getFile().length();
+        event.file = parser.getFile().getPath();
+        event.bytes = bytes;
+        event.rows = waveformFile.getNumRows();
+        event.columns = waveformFile.getNumColumns();
+        event.megabytesPerSecond = bytes / Metrics.BYTES_PER_MEGABYTE / (millis / 1000);
+        event.heapBytes = waveformFile.getHeapBytes();
+        event.cached = waveformFile.isCached();
+        event.commit();
+
+        Metrics.PARSE_TIME.record(millis);
+        Metrics.PARSE_THROUGHPUT.record(event.megabytesPerSecond);
+        Metrics.ROWS.record(event.rows);
+        Metrics.FILE_HEAP.record(event.heapBytes / Metrics.BYTES_PER_MEGABYTE);
+        return waveformFile;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        parser.cancel();
+        return super.cancel(mayInterruptIfRunning);
+    }
+}
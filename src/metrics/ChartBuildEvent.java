@@ -0,0 +1,24 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Getting one column ready to draw: decoding it if it is decoded lazily and building its min/max pyramid. The canvas
+ * renderer does that on the loader thread the first time the column's lane is drawn, and again if the decoded
+ * samples were evicted since; the chart renderer does it while adding the chart.
+ */
+@Name("labelme.ChartBuild")
+@Label("Chart Build")
+@Category("Label Me")
+public class ChartBuildEvent extends jdk.jfr.Event {
+    @Label("File")
+    public String file;
+
+    @Label("Column")
+    public String column;
+
+    @Label("Renderer")
+    public String renderer;
+}
@@ -0,0 +1,21 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Moving the waveform cursors to a new playback time.
+ */
+@Name("labelme.CursorUpdate")
+@Label("Cursor Update")
+@Category("Label Me")
+public class CursorUpdateEvent extends jdk.jfr.Event {
+    @Label("Playback Time")
+    public double playbackSeconds;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    public long latency;
+}
@@ -0,0 +1,19 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Drawing the waveforms once.
+ */
+@Name("labelme.FrameRender")
+@Label("Frame Render")
+@Category("Label Me")
+public class FrameRenderEvent extends jdk.jfr.Event {
+    @Label("Tracks")
+    public int tracks;
+
+    @Label("Points Drawn")
+    public long points;
+}
@@ -0,0 +1,67 @@
+package metrics;
+
+/**
+ * A named measurement with its latest value, a moving average and the largest value seen. Recorded from any thread.
+ */
+public class Metric {
+    // weight of the newest value in the moving average, about the last 20 values
+    private static final double SMOOTHING = 0.1;
+
+    private final String name;
+    private final String unit;
+    private double last = Double.NaN;
+    private double average = Double.NaN;
+    private double max = Double.NaN;
+    private long count = 0;
+
+    public Metric(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public synchronized void record(double value) {
+        last = value;
+        average = count == 0 ? value : average + (value - average) * SMOOTHING;
+        max = count == 0 ? value : Math.max(max, value);
+        count++;
+    }
+
+    public synchronized double getLast() {
+        return last;
+    }
+
+    public synchronized double getAverage() {
+        return average;
+    }
+
+    public synchronized double getMax() {
+        return max;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized void reset() {
+        last = Double.NaN;
+        average = Double.NaN;
+        max = Double.NaN;
+        count = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if(count == 0) {
+            return name + ": -";
+        }
+        return String.format("%s: %.2f %s (avg %.2f, max %.2f, n=%d)", name, last, unit, average, max, count);
+    }
+}
@@ -0,0 +1,41 @@
+package metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The application's performance measurements. The same measurements are also committed as JFR events (see
+ * {@link WaveformLoadEvent} and its neighbours), so a recording started with {@code -XX:StartFlightRecording} shows
+ * them next to GC and thread activity.
+ */
+public class Metrics {
+    public static final Metric PARSE_TIME = new Metric("File load", "ms");
+    public static final Metric PARSE_THROUGHPUT = new Metric("Load rate", "MB/s");
+    public static final Metric ROWS = new Metric("Rows per file", "rows");
+    public static final Metric FILE_HEAP = new Metric("Heap per file", "MB");
+    public static final Metric CHART_BUILD = new Metric("Chart build", "ms");
+    public static final Metric FRAME_RENDER = new Metric("Frame render", "ms");
+    public static final Metric CURSOR_LATENCY = new Metric("Cursor latency", "ms");
+
+    private static final List<Metric> ALL = Collections.unmodifiableList(Arrays.asList(PARSE_TIME, PARSE_THROUGHPUT,
+            ROWS, FILE_HEAP, CHART_BUILD, FRAME_RENDER, CURSOR_LATENCY));
+
+    public static final double NANOS_PER_MILLI = 1e6;
+    public static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private Metrics() {
+    }
+
+    public static List<Metric> all() {
+        return ALL;
+    }
+
+    /**
+     * Heap in use right now, in megabytes.
+     */
+    public static double usedHeapMegabytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / BYTES_PER_MEGABYTE;
+    }
+}
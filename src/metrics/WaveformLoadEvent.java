@@ -0,0 +1,39 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Loading one waveform file, from the start of parsing (or reading the cache) until its columns are ready.
+ */
+@Name("labelme.WaveformLoad")
+@Label("Waveform Load")
+@Category("Label Me")
+@Description("Parsing a waveform file or mapping its cached copy")
+public class WaveformLoadEvent extends jdk.jfr.Event {
+    @Label("File")
+    public String file;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Rows")
+    public long rows;
+
+    @Label("Columns")
+    public int columns;
+
+    @Label("Megabytes per Second")
+    public double megabytesPerSecond;
+
+    @Label("Heap Used by File")
+    @DataAmount
+    public long heapBytes;
+
+    @Label("From Cache")
+    public boolean cached;
+}
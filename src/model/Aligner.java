@@ -0,0 +1,309 @@
+package model;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Estimates how far to shift files on the shared timeline so that a column of each lines up with a reference column,
+ * by finding the lag at which the two correlate best. Both columns are resampled onto a common grid, averaging the
+ * samples in each step, normalized, and correlated at every lag at once through an FFT. Each lag's correlation is
+ * normalized by the parts of the two that overlap at it, so only how well they match counts, not how much.
+ *
+ * Long recordings are aligned coarse to fine. The first pass covers both recordings whole at about
+ * {@value #LEVEL_SAMPLES} steps, which finds the lag to within a step. Each further pass makes the step
+ * {@value #REFINE} times finer and only correlates a window of {@value #LEVEL_SAMPLES} steps from where the
+ * recordings overlap, trying lags a couple of the previous steps either side of the last estimate, until the step
+ * reaches the sample interval of the coarser recording. So an hour-long recording takes a few FFTs of a few hundred
+ * thousand values whatever its sample rate.
+ */
+public class Aligner {
+    private static final int LEVEL_SAMPLES = 1 << 15;
+    private static final int REFINE = 16;
+    // lags tried either side of the previous estimate, in that pass's steps
+    private static final int SEARCH_STEPS = 2;
+    // the first pass only considers lags where the recordings overlap by at least this much of the shorter one
+    private static final double MIN_OVERLAP = 0.25;
+
+    private Aligner() {
+    }
+
+    /**
+     * The offset that best lines {@code column} up with {@code reference} as it is currently placed on the shared
+     * timeline, in seconds, for {@link WaveformFile#setOffsetTime}.
+     *
+     * @return NaN if either column is too short or flat to align
+     */
+    public static double estimateOffset(WaveformColumn reference, WaveformColumn column) {
+        Signal r = new Signal(reference, true);
+        Signal x = new Signal(column, false);
+        if(r.samples < 2 || x.samples < 2 || !(r.end > r.start) || !(x.end > x.start)) {
+            return Double.NaN;
+        }
+        // r is in shared time and x in its file's time, so the lag between them is x's offset
+        double finest = Math.max(r.interval(), x.interval());
+        double step = Math.max(Math.max(r.end - r.start, x.end - x.start) / (LEVEL_SAMPLES - 1), finest);
+
+        // the first pass tries every lag
+        int rCount = (int) ((r.end - r.start) / step) + 1;
+        int xCount = (int) ((x.end - x.start) / step) + 1;
+        double[] rSamples = new double[rCount];
+        double[] xSamples = new double[xCount];
+        if(!r.resample(r.start, step, rSamples) || !x.resample(x.start, step, xSamples)) {
+            return Double.NaN;
+        }
+        int minOverlap = (int) Math.ceil(MIN_OVERLAP * Math.min(rCount, xCount));
+        Correlation best = correlate(rSamples, xSamples, -(xCount - minOverlap), rCount - minOverlap);
+        double offset = r.start + best.lag * step - x.start;
+
+        while(step > finest) {
+            double coarse = step;
+            step = Math.max(step / REFINE, finest);
+            int margin = (int) Math.ceil(SEARCH_STEPS * coarse / step);
+            // the middle of where the recordings overlap, in x's time
+            double overlapStart = Math.max(x.start, r.start - offset);
+            double overlapEnd = Math.min(x.end, r.end - offset);
+            if(!(overlapEnd > overlapStart)) {
+                break;
+            }
+            xCount = (int) Math.min(LEVEL_SAMPLES, (overlapEnd - overlapStart) / step + 1);
+            double xStart = (overlapStart + overlapEnd) / 2 - (xCount - 1) * step / 2;
+            double rStart = xStart + offset - margin * step;
+            rSamples = new double[xCount + 2 * margin];
+            xSamples = new double[xCount];
+            if(!r.resample(rStart, step, rSamples) || !x.resample(xStart, step, xSamples)) {
+                break;
+            }
+            best = correlate(rSamples, xSamples, 0, 2 * margin);
+            offset = rStart + best.lag * step - xStart;
+        }
+        return offset + best.fraction * step;
+    }
+
+    /**
+     * {@link #estimateOffset} for each of {@code columns}, spread over the fork-join pool.
+     *
+     * @return an offset, or NaN, per column in order
+     */
+    public static double[] estimateOffsets(WaveformColumn reference, List<WaveformColumn> columns) {
+        double[] offsets = new double[columns.size()];
+        if(!columns.isEmpty()) {
+            new AlignTask(reference, columns, offsets, 0, columns.size()).invoke();
+        }
+        return offsets;
+    }
+
+    private static class AlignTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final WaveformColumn reference;
+        private final List<WaveformColumn> columns;
+        private final double[] offsets;
+        private final int from;
+        private final int to;
+
+        AlignTask(WaveformColumn reference, List<WaveformColumn> columns, double[] offsets, int from, int to) {
+            this.reference = reference;
+            this.columns = columns;
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                offsets[from] = estimateOffset(reference, columns.get(from));
+            } else if(to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new AlignTask(reference, columns, offsets, from, middle),
+                        new AlignTask(reference, columns, offsets, middle, to));
+            }
+        }
+    }
+
+    /**
+     * The best lag found, and how far between it and its neighbours the peak really lies, as a fraction of a step.
+     */
+    private static class Correlation {
+        final int lag;
+        final double fraction;
+
+        Correlation(int lag, double fraction) {
+            this.lag = lag;
+            this.fraction = fraction;
+        }
+    }
+
+    /**
+     * Find the lag in [minLag, maxLag] that maximizes the normalized correlation of {@code x} and {@code r} where
+     * they overlap: the sum over the overlapping i of {@code x[i] * r[i + lag]}, divided by the root of the two
+     * overlapping parts' sums of squares. Normalized rather than the plain sum, so lags where the recordings overlap
+     * more, or where they happen to be louder, aren't favoured for it.
+     */
+    private static Correlation correlate(double[] r, double[] x, int minLag, int maxLag) {
+        int n = Fft.nextPowerOfTwo(r.length + x.length);
+        double[] rRe = new double[n];
+        double[] rIm = new double[n];
+        double[] xRe = new double[n];
+        double[] xIm = new double[n];
+        System.arraycopy(r, 0, rRe, 0, r.length);
+        System.arraycopy(x, 0, xRe, 0, x.length);
+        Fft.transform(rRe, rIm, n);
+        Fft.transform(xRe, xIm, n);
+        // R times the conjugate of X, conjugated again so a forward transform inverts it
+        for(int k = 0; k < n; k++) {
+            double re = rRe[k] * xRe[k] + rIm[k] * xIm[k];
+            double im = rIm[k] * xRe[k] - rRe[k] * xIm[k];
+            rRe[k] = re;
+            rIm[k] = -im;
+        }
+        Fft.transform(rRe, rIm, n);
+        // the real part is now n times the correlation, with negative lags wrapped to the end
+        Overlap overlap = new Overlap(r, x, n);
+
+        int best = minLag;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for(int lag = minLag; lag <= maxLag; lag++) {
+            double value = overlap.normalize(rRe, lag);
+            if(value > bestValue) {
+                bestValue = value;
+                best = lag;
+            }
+        }
+        double fraction = 0;
+        if(best > minLag && best < maxLag) {
+            // fit a parabola through the peak and its neighbours
+            double before = overlap.normalize(rRe, best - 1);
+            double after = overlap.normalize(rRe, best + 1);
+            double curvature = before - 2 * bestValue + after;
+            if(curvature < 0) {
+                fraction = 0.5 * (before - after) / curvature;
+            }
+        }
+        return new Correlation(best, fraction);
+    }
+
+    /**
+     * Running sums of squares of both inputs to a correlation, to normalize it by the part that overlaps at each lag.
+     */
+    private static class Overlap {
+        private final double[] rSquares;
+        private final double[] xSquares;
+        private final int n;
+
+        Overlap(double[] r, double[] x, int n) {
+            rSquares = runningSquares(r);
+            xSquares = runningSquares(x);
+            this.n = n;
+        }
+
+        private static double[] runningSquares(double[] values) {
+            double[] sums = new double[values.length + 1];
+            for(int i = 0; i < values.length; i++) {
+                sums[i + 1] = sums[i] + values[i] * values[i];
+            }
+            return sums;
+        }
+
+        /**
+         * The correlation at {@code lag}, out of the FFT's output, normalized to [-1, 1].
+         */
+        double normalize(double[] correlation, int lag) {
+            int from = Math.max(0, -lag);
+            int to = Math.min(xSquares.length - 1, rSquares.length - 1 - lag);
+            if(to <= from) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            double energy = (xSquares[to] - xSquares[from]) * (rSquares[to + lag] - rSquares[from + lag]);
+            return energy > 0 ? correlation[lag & (n - 1)] / n / Math.sqrt(energy) : Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * A column with its times on the timeline it is aligned on: the shared timeline for the reference, and the file's
+     * own for the column being aligned, whose offset is what's being estimated.
+     */
+    private static class Signal {
+        private final SampleColumn time;
+        private final SampleColumn values;
+        private final double shift;
+        private final int samples;
+        private final double start;
+        private final double end;
+
+        /**
+         * @param shared whether to place the column on the shared timeline rather than its file's own
+         */
+        Signal(WaveformColumn column, boolean shared) {
+            WaveformFile file = column.getFile();
+            time = file.getTimeColumn();
+            values = file.getColumn(column.getName());
+            shift = shared ? file.getOffsetSeconds() : 0;
+            samples = Math.min(time.size(), values.size());
+            start = samples > 0 ? time.getDouble(0) + shift : Double.NaN;
+            end = samples > 0 ? time.getDouble(samples - 1) + shift : Double.NaN;
+        }
+
+        double interval() {
+            return (end - start) / (samples - 1);
+        }
+
+        /**
+         * Fill {@code out} with the mean of the samples around {@code start + i * step}, normalized to zero mean
+         * and unit variance. Steps no sample falls in are interpolated from their neighbours, and steps outside the
+         * recording are zero.
+         *
+         * @return false if the samples are all the same, so there is nothing to correlate
+         */
+        boolean resample(double start, double step, double[] out) {
+            double fileStart = start - shift;
+            int index = TimeIndex.lowerBound(time, samples, fileStart - step / 2);
+            int previous = -1;
+            for(int i = 0; i < out.length; i++) {
+                double binEnd = fileStart + (i + 0.5) * step;
+                double sum = 0;
+                int count = 0;
+                while(index < samples && time.getDouble(index) < binEnd) {
+                    float value = values.get(index++);
+                    if(!Float.isNaN(value)) {
+                        sum += value;
+                        count++;
+                    }
+                }
+                if(count == 0) {
+                    out[i] = Double.NaN;
+                    continue;
+                }
+                out[i] = sum / count;
+                // bridge the empty steps since the last full one
+                for(int gap = previous + 1; previous >= 0 && gap < i; gap++) {
+                    out[gap] = out[previous] + (out[i] - out[previous]) * (gap - previous) / (i - previous);
+                }
+                previous = i;
+            }
+
+            double mean = 0;
+            int count = 0;
+            for(double value : out) {
+                if(!Double.isNaN(value)) {
+                    count++;
+                    mean += (value - mean) / count;
+                }
+            }
+            double squares = 0;
+            for(double value : out) {
+                if(!Double.isNaN(value)) {
+                    squares += (value - mean) * (value - mean);
+                }
+            }
+            if(count < 2 || !(squares > 0)) {
+                return false;
+            }
+            double scale = 1 / Math.sqrt(squares / count);
+            for(int i = 0; i < out.length; i++) {
+                out[i] = Double.isNaN(out[i]) ? 0 : (out[i] - mean) * scale;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Column stored off the heap as fixed-size chunks of {@value #CHUNK_SIZE} samples, each an encoded block in a memory
+ * mapped {@link WaveformCache} file. Blocks hold raw floats, or exact ticks in the {@link DeltaColumn} layout for
+ * chunks the parser found to be plain decimals or timestamps. A chunk is decoded into a float array the first time one
+ * of its samples is read. {@link #getDouble} reads exact ticks straight from the mapped block instead, without
+ * decoding anything, so looking up times stays cheap and precise.
+ * Decoded chunks of all columns share a least recently used cache limited to {@code labelme.chunkCacheMB} megabytes
+ * (an eighth of the maximum heap by default), so browsing a recording larger than memory keeps the heap, and with it
+ * GC pauses, bounded.
+ */
+public class ChunkedColumn implements SampleColumn {
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int BLOCK_HEADER_BYTES = 12;
+    static final byte ENCODING_RAW = 0;
+    static final byte ENCODING_DELTA = 1;
+
+    private static final long BUDGET_BYTES = Long.getLong("labelme.chunkCacheMB",
+            Runtime.getRuntime().maxMemory() / 8 / (1024 * 1024)) * 1024 * 1024;
+    private static final Map<ChunkKey, float[]> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private static long residentBytes = 0;
+
+    private final ByteBuffer[] blocks;
+    private final int size;
+    private final AtomicReferenceArray<float[]> decoded;
+    // the chunk last read, so the cache is only touched when a reader moves on to another chunk
+    private volatile int lastChunk = -1;
+    private long decodedBytes = 0;
+
+    /**
+     * @param blocks one encoded block per chunk, in order
+     */
+    ChunkedColumn(ByteBuffer[] blocks, int size) {
+        this.blocks = new ByteBuffer[blocks.length];
+        for(int i = 0; i < blocks.length; i++) {
+            // views of the mapping are big-endian whatever the mapping was
+            this.blocks[i] = blocks[i].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.size = size;
+        this.decoded = new AtomicReferenceArray<>(blocks.length);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public float get(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        int chunk = index >>> CHUNK_SHIFT;
+        float[] samples = decoded.get(chunk);
+        if(samples == null) {
+            samples = load(chunk);
+        } else if(chunk != lastChunk) {
+            lastChunk = chunk;
+            synchronized(resident) {
+                resident.get(new ChunkKey(this, chunk));
+            }
+        }
+        return samples[index & (CHUNK_SIZE - 1)];
+    }
+
+    @Override
+    public double getDouble(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        ByteBuffer block = blocks[index >>> CHUNK_SHIFT];
+        if(block.get(0) != ENCODING_DELTA) {
+            return get(index);
+        }
+        long tick = DeltaColumn.tickAt(block, BLOCK_HEADER_BYTES, index & (CHUNK_SIZE - 1));
+        return tick / (double) DeltaColumn.POWERS_OF_TEN[DeltaColumn.decimalsAt(block, BLOCK_HEADER_BYTES)];
+    }
+
+    /**
+     * Heap held by this column's decoded chunks.
+     */
+    public long getDecodedBytes() {
+        synchronized(resident) {
+            return decodedBytes;
+        }
+    }
+
+    /**
+     * Heap held by the decoded chunks of all columns.
+     */
+    public static long getResidentBytes() {
+        synchronized(resident) {
+            return residentBytes;
+        }
+    }
+
+    private float[] load(int chunk) {
+        float[] samples = decode(blocks[chunk]);
+        synchronized(resident) {
+            // another thread may have decoded it meanwhile; keep theirs so the accounting stays right
+            float[] existing = decoded.get(chunk);
+            if(existing != null) {
+                return existing;
+            }
+            decoded.set(chunk, samples);
+            lastChunk = chunk;
+            long bytes = (long) samples.length * Float.BYTES;
+            resident.put(new ChunkKey(this, chunk), samples);
+            residentBytes += bytes;
+            decodedBytes += bytes;
+            Iterator<Map.Entry<ChunkKey, float[]>> iterator = resident.entrySet().iterator();
+            while(residentBytes > BUDGET_BYTES && iterator.hasNext()) {
+                Map.Entry<ChunkKey, float[]> entry = iterator.next();
+                ChunkKey key = entry.getKey();
+                if(key.column == this && key.chunk == chunk) {
+                    continue;
+                }
+                long evicted = (long) entry.getValue().length * Float.BYTES;
+                key.column.decoded.set(key.chunk, null);
+                key.column.decodedBytes -= evicted;
+                residentBytes -= evicted;
+                iterator.remove();
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Write {@code count} samples as one block: an encoding byte, three bytes of padding, the sample count and the
+     * payload length, then the payload.
+     */
+    static ByteBuffer encode(float[] samples, int count) {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_BYTES + count * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        block.put(ENCODING_RAW).put((byte) 0).put((byte) 0).put((byte) 0);
+        block.putInt(count).putInt(count * Float.BYTES);
+        block.asFloatBuffer().put(samples, 0, count);
+        block.clear();
+        return block;
+    }
+
+    /**
+     * Write {@code count} exact ticks as one delta encoded block, with the same header as raw blocks.
+     */
+    static ByteBuffer encode(long[] ticks, int count, int decimals) {
+        ByteBuffer block = DeltaColumn.encode(ticks, count, decimals, BLOCK_HEADER_BYTES);
+        block.put(0, ENCODING_DELTA).put(1, (byte) 0).put(2, (byte) 0).put(3, (byte) 0);
+        block.putInt(4, count).putInt(8, block.capacity() - BLOCK_HEADER_BYTES);
+        return block;
+    }
+
+    private static float[] decode(ByteBuffer block) {
+        ByteBuffer buffer = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        byte encoding = buffer.get(0);
+        int count = buffer.getInt(4);
+        float[] samples = new float[count];
+        if(encoding == ENCODING_DELTA) {
+            double divisor = DeltaColumn.POWERS_OF_TEN[DeltaColumn.decimalsAt(buffer, BLOCK_HEADER_BYTES)];
+            for(int i = 0; i < count; i++) {
+                samples[i] = (float) (DeltaColumn.tickAt(buffer, BLOCK_HEADER_BYTES, i) / divisor);
+            }
+            return samples;
+        }
+        if(encoding != ENCODING_RAW) {
+            throw new IllegalStateException("Unknown chunk encoding " + encoding);
+        }
+        buffer.position(BLOCK_HEADER_BYTES);
+        buffer.asFloatBuffer().get(samples);
+        return samples;
+    }
+
+    private static class ChunkKey {
+        private final ChunkedColumn column;
+        private final int chunk;
+
+        ChunkKey(ChunkedColumn column, int chunk) {
+            this.column = column;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof ChunkKey)) {
+                return false;
+            }
+            ChunkKey key = (ChunkKey) other;
+            return key.column == column && key.chunk == chunk;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(column) * 31 + chunk;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The columns of every open file, searchable by any part of their names, ignoring case. Each name is indexed by the
+ * trigrams (runs of three characters) in it, so a search only looks at the columns that have every trigram of the
+ * query, found by intersecting their sorted lists of column ids, and then checks that those really contain it.
+ * Queries shorter than a trigram are rare enough, and few enough columns match them, that they just scan the names.
+ */
+public class ColumnIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * Ids of the columns whose names contain one trigram, in increasing order since ids are handed out in order.
+     */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        void add(int id) {
+            // a name with a trigram in it twice is listed once
+            if(size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if(size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private final List<WaveformColumn> columns = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    /**
+     * Index every column of a file.
+     *
+     * @return a handle for each column, in the file's order
+     */
+    public synchronized List<WaveformColumn> addFile(WaveformFile file) {
+        List<WaveformColumn> added = new ArrayList<>();
+        int index = 0;
+        for(String header : file.getColumnHeaders()) {
+            WaveformColumn column = new WaveformColumn(file, header, index++);
+            int id = columns.size();
+            String name = normalize(header);
+            columns.add(column);
+            names.add(name);
+            for(int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+                postings.computeIfAbsent(name.substring(i, i + GRAM_LENGTH), gram -> new Postings()).add(id);
+            }
+            added.add(column);
+        }
+        return added;
+    }
+
+    public synchronized int size() {
+        return columns.size();
+    }
+
+    /**
+     * The columns whose names contain {@code query}, ignoring case, in the order they were added. An empty query
+     * matches every column.
+     */
+    public synchronized List<WaveformColumn> search(String query) {
+        String text = normalize(query);
+        List<WaveformColumn> matches = new ArrayList<>();
+        if(text.length() < GRAM_LENGTH) {
+            for(int id = 0; id < columns.size(); id++) {
+                if(names.get(id).contains(text)) {
+                    matches.add(columns.get(id));
+                }
+            }
+            return matches;
+        }
+
+        List<Postings> lists = new ArrayList<>();
+        for(int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            Postings list = postings.get(text.substring(i, i + GRAM_LENGTH));
+            if(list == null) {
+                return Collections.emptyList();
+            }
+            lists.add(list);
+        }
+        // start from the rarest trigram so every intersection is at most that long
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        int[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        int count = candidates.length;
+        for(int i = 1; i < lists.size() && count > 0; i++) {
+            count = intersect(candidates, count, lists.get(i));
+        }
+        // having all the trigrams doesn't mean having them in the query's order
+        for(int i = 0; i < count; i++) {
+            if(names.get(candidates[i]).contains(text)) {
+                matches.add(columns.get(candidates[i]));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Keep the first {@code count} of {@code candidates} that are also in {@code list}, in place.
+     *
+     * @return how many are left
+     */
+    private static int intersect(int[] candidates, int count, Postings list) {
+        int kept = 0;
+        int j = 0;
+        for(int i = 0; i < count && j < list.size; i++) {
+            int id = candidates[i];
+            while(j < list.size && list.ids[j] < id) {
+                j++;
+            }
+            if(j < list.size && list.ids[j] == id) {
+                candidates[kept++] = id;
+            }
+        }
+        return kept;
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+}
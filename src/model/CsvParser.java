@@ -0,0 +1,950 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses a numeric CSV file into primitive columns. The data section is memory mapped and cut into newline aligned
+ * chunks which are parsed straight from bytes on the fork-join pool, then the per-chunk column blocks are merged in
+ * file order.
+ *
+ * Time columns are kept exactly as a {@link DeltaColumn}, since epoch milliseconds or the microsecond clock of a long
+ * recording would collapse and reorder as floats. A column of ISO-8601 timestamps is always a time column; others are
+ * named by {@link #setExactColumns} and kept exactly as long as their cells are plain decimals with up to
+ * {@value DeltaColumn#MAX_DECIMALS} decimals, integers among them. Every other column is stored as floats, which are
+ * parsed and read faster.
+ *
+ * Files too large to hold on the heap can be handed to a {@link RowSink} instead: chunks are then parsed a batch of
+ * about {@code labelme.parseBatchMB} megabytes of text at a time, and each batch is passed on and dropped before the
+ * next is parsed.
+ */
+public class CsvParser {
+    private static final long MIN_CHUNK_SIZE = 1L << 22;
+    private static final long MAX_CHUNK_SIZE = 1L << 28;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+    private static final int PROGRESS_INTERVAL = 1 << 20;
+
+    private static final long MAX_MANTISSA = 100000000000000000L;
+    // timestamps are stored as microseconds since the epoch, so they read as seconds
+    private static final int TIMESTAMP_DECIMALS = 6;
+    private static final int NOT_EXACT = -1;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long BATCH_SIZE = Long.getLong("labelme.parseBatchMB",
+            Math.max(64, Runtime.getRuntime().maxMemory() / 16 / (1024 * 1024))) * 1024 * 1024;
+
+    /**
+     * Receives the number of bytes parsed so far. May be called from any of the parsing threads.
+     */
+    public interface ProgressListener {
+        void progress(long bytesParsed, long totalBytes);
+    }
+
+    /**
+     * Takes parsed rows in file order, so they don't all have to be on the heap at once.
+     */
+    public interface RowSink {
+        void start(String[] headers) throws IOException;
+
+        /**
+         * Take the next rows, one column per header. The columns are not used again after this returns.
+         */
+        void append(SampleColumn[] columns) throws IOException;
+
+        /**
+         * @return the columns holding every row appended
+         */
+        SampleColumn[] finish() throws IOException;
+    }
+
+    private final File file;
+    private final AtomicLong bytesParsed = new AtomicLong();
+    private volatile boolean cancelled = false;
+    private ProgressListener progressListener;
+    private long totalBytes;
+    private int lazyColumnThreshold = Integer.MAX_VALUE;
+    private Set<String> eagerColumns = Collections.emptySet();
+    private boolean[] eager;
+    private Set<String> exactColumns = Collections.emptySet();
+    private boolean[] exact;
+    private String[] headers;
+    private SampleColumn[] columns;
+    private RowSink rowSink;
+    private long rowSinkThreshold = Long.MAX_VALUE;
+    private boolean sunk = false;
+    private boolean compressColumns = false;
+
+    public CsvParser(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * For files with at least {@code threshold} columns, only parse the named columns up front. The rest are
+     * returned as {@link LazyCsvColumn}s which are decoded from the file on first use.
+     */
+    public void setLazyColumns(int threshold, String... eagerColumns) {
+        this.lazyColumnThreshold = threshold;
+        this.eagerColumns = new HashSet<>(Arrays.asList(eagerColumns));
+    }
+
+    /**
+     * Keep the named columns, such as the time column, exactly rather than as floats if their cells allow it.
+     */
+    public void setExactColumns(String... exactColumns) {
+        this.exactColumns = new HashSet<>(Arrays.asList(exactColumns));
+    }
+
+    /**
+     * Keep columns that aren't exact as {@link XorColumn}s, compressed in memory, instead of plain floats.
+     */
+    public void setCompressColumns(boolean compressColumns) {
+        this.compressColumns = compressColumns;
+    }
+
+    /**
+     * Pass the rows of files of at least {@code minFileSize} bytes to {@code sink} rather than keeping them. Files
+     * whose columns are decoded lazily are never passed on.
+     */
+    public void setRowSink(RowSink sink, long minFileSize) {
+        this.rowSink = sink;
+        this.rowSinkThreshold = minFileSize;
+    }
+
+    /**
+     * @return true if the last parse passed its rows to the {@link RowSink}
+     */
+    public boolean isSunk() {
+        return sunk;
+    }
+
+    /**
+     * @return true if the last parse left some columns to be decoded lazily
+     */
+    public boolean isLazy() {
+        return eager != null;
+    }
+
+    /**
+     * Ask a running {@link #parse()} to stop. The parse then throws a {@link CancellationException}.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Parse the whole file. Line numbers reported in exceptions are 1-based and count the header line.
+     */
+    public void parse() throws IOException, ParseException, NumberFormatException, CancellationException {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel()) {
+            long fileSize = channel.size();
+            totalBytes = fileSize;
+            long dataStart = readHeader(channel);
+            reportProgress(dataStart);
+            if(headers == null) {
+                headers = new String[0];
+                columns = new SampleColumn[0];
+                return;
+            }
+            exact = new boolean[headers.length];
+            for(int i = 0; i < headers.length; i++) {
+                exact[i] = exactColumns.contains(headers[i]);
+            }
+            if(headers.length >= lazyColumnThreshold) {
+                eager = new boolean[headers.length];
+                for(int i = 0; i < headers.length; i++) {
+                    eager[i] = eagerColumns.contains(headers[i]);
+                }
+            }
+
+            boolean sink = rowSink != null && eager == null && fileSize >= rowSinkThreshold;
+            // a batch should still keep every core busy
+            long maxChunkSize = sink ? Math.max(MIN_CHUNK_SIZE, BATCH_SIZE / ForkJoinPool.getCommonPoolParallelism())
+                    : MAX_CHUNK_SIZE;
+            long[] boundaries = splitIntoChunks(channel, dataStart, fileSize, Math.min(maxChunkSize, MAX_CHUNK_SIZE));
+            Chunk[] chunks = new Chunk[boundaries.length - 1];
+            for(int i = 0; i < chunks.length; i++) {
+                chunks[i] = new Chunk(channel, boundaries[i], boundaries[i + 1], headers.length);
+            }
+            if(sink) {
+                parseInBatches(chunks);
+                return;
+            }
+            try {
+                // runs in the caller's pool when called from one, e.g. by the batch segmenter, else the common pool
+                new ParseChunksTask(chunks, 0, chunks.length).invoke();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            checkCancelled();
+            merge(chunks, fileSize);
+        }
+    }
+
+    /**
+     * Parse consecutive chunks until about {@link #BATCH_SIZE} bytes of text are parsed, pass their rows to the sink
+     * and drop them, and carry on with the next batch.
+     */
+    private void parseInBatches(Chunk[] chunks) throws IOException, ParseException, NumberFormatException,
+            CancellationException {
+        rowSink.start(headers);
+        int lineNumber = 1;
+        long rows = 0;
+        int from = 0;
+        while(from < chunks.length) {
+            int to = from + 1;
+            long bytes = chunks[from].end - chunks[from].start;
+            while(to < chunks.length && bytes + chunks[to].end - chunks[to].start <= BATCH_SIZE) {
+                bytes += chunks[to].end - chunks[to].start;
+                to++;
+            }
+            try {
+                new ParseChunksTask(chunks, from, to).invoke();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            checkCancelled();
+            for(int i = from; i < to; i++) {
+                Chunk chunk = chunks[i];
+                checkErrors(chunk, lineNumber);
+                lineNumber += chunk.lines;
+                rows += chunk.rows;
+                if(rows > Integer.MAX_VALUE - 8) {
+                    throw new OutOfMemoryError("Too many rows: " + rows);
+                }
+                rowSink.append(chunk.columns);
+                chunks[i] = null;
+            }
+            from = to;
+        }
+        columns = rowSink.finish();
+        sunk = true;
+    }
+
+    public String[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Read only the header line of {@code file}, e.g. to ask which column is the time column before it is parsed.
+     *
+     * @throws IOException if the file is empty
+     */
+    public static String[] readHeaders(File file) throws IOException {
+        CsvParser parser = new CsvParser(file);
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel()) {
+            parser.readHeader(channel);
+        }
+        if(parser.headers == null) {
+            throw new IOException(file.getName() + " is empty");
+        }
+        return parser.headers;
+    }
+
+    public SampleColumn[] getColumns() {
+        return columns;
+    }
+
+    private void reportProgress(long bytes) {
+        long parsed = bytesParsed.addAndGet(bytes);
+        if(progressListener != null) {
+            progressListener.progress(parsed, totalBytes);
+        }
+    }
+
+    private void checkCancelled() throws CancellationException {
+        if(cancelled) {
+            throw new CancellationException("Parsing " + file.getName() + " was cancelled");
+        }
+    }
+
+    private long readHeader(FileChannel channel) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = 0;
+        int read;
+        while((read = channel.read(buffer, position)) > 0) {
+            buffer.flip();
+            for(int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if(b == '\n') {
+                    headers = splitHeader(headerBytes.toByteArray());
+                    return position + i + 1;
+                }
+                headerBytes.write(b);
+            }
+            position += read;
+            buffer.clear();
+        }
+        if(headerBytes.size() > 0) {
+            headers = splitHeader(headerBytes.toByteArray());
+        }
+        return position;
+    }
+
+    private static String[] splitHeader(byte[] bytes) {
+        String line = new String(bytes, StandardCharsets.UTF_8);
+        if(line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+        return line.split(",");
+    }
+
+    private static long[] splitIntoChunks(FileChannel channel, long dataStart, long fileSize, long maxChunkSize)
+            throws IOException {
+        long dataSize = fileSize - dataStart;
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long chunkCount = Math.max(1, Math.min(parallelism * 4L, dataSize / MIN_CHUNK_SIZE));
+        chunkCount = Math.max(chunkCount, (dataSize + maxChunkSize - 1) / maxChunkSize);
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(dataStart);
+        for(long i = 1; i < chunkCount; i++) {
+            long nominal = dataStart + dataSize * i / chunkCount;
+            long previous = boundaries.get(boundaries.size() - 1);
+            if(nominal <= previous) {
+                continue;
+            }
+            long boundary = findLineStart(channel, nominal, fileSize);
+            if(boundary > previous && boundary < fileSize) {
+                boundaries.add(boundary);
+            }
+        }
+        boundaries.add(fileSize);
+
+        long[] result = new long[boundaries.size()];
+        for(int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Find the first offset at or after {@code position} that starts a new line.
+     */
+    private static long findLineStart(FileChannel channel, long position, long fileSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while(position < fileSize) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if(read <= 0) {
+                break;
+            }
+            for(int i = 0; i < read; i++) {
+                if(buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * @param lineNumber line number of the line before the chunk's first line
+     */
+    private void checkErrors(Chunk chunk, int lineNumber) throws ParseException, NumberFormatException {
+        if(chunk.errorLine >= 0) {
+            int errorLine = lineNumber + chunk.errorLine + 1;
+            if(chunk.errorColumns >= 0) {
+                throw new ParseException("Wrong number of columns on line " + errorLine + " expected "
+                        + headers.length + " but found " + chunk.errorColumns, errorLine);
+            }
+            throw new NumberFormatException(chunk.errorMessage + " on line " + errorLine);
+        }
+    }
+
+    private void merge(Chunk[] chunks, long fileSize) throws ParseException {
+        int lineNumber = 1;
+        long rows = 0;
+        for(Chunk chunk : chunks) {
+            checkErrors(chunk, lineNumber);
+            lineNumber += chunk.lines;
+            rows += chunk.rows;
+        }
+        if(rows > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Too many rows: " + rows);
+        }
+
+        columns = new SampleColumn[headers.length];
+        LazyCsvColumn.Source lazySource = null;
+        if(eager != null) {
+            long[] rowOffsets = new long[(int) rows];
+            int row = 0;
+            for(Chunk chunk : chunks) {
+                System.arraycopy(chunk.rowOffsets, 0, rowOffsets, row, chunk.rows);
+                row += chunk.rows;
+                chunk.rowOffsets = null;
+            }
+            lazySource = new LazyCsvColumn.Source(file, rowOffsets, fileSize);
+        }
+        for(int i = 0; i < columns.length; i++) {
+            if(eager != null && !eager[i]) {
+                columns[i] = new LazyCsvColumn(lazySource, i);
+                continue;
+            }
+            columns[i] = mergeColumn(chunks, i, (int) rows, compressColumns);
+        }
+    }
+
+    /**
+     * Join a column's blocks from every chunk, exactly if every block was exact and fits at the finest of their
+     * resolutions, otherwise as floats, compressed if asked to.
+     */
+    private static SampleColumn mergeColumn(Chunk[] chunks, int column, int rows, boolean compress) {
+        int decimals = 0;
+        boolean exact = false;
+        for(Chunk chunk : chunks) {
+            SampleColumn block = chunk.columns[column];
+            if(block instanceof LongColumn) {
+                decimals = Math.max(decimals, ((LongColumn) block).getDecimals());
+                exact = true;
+            }
+        }
+        // chunks without rows don't know what the column holds
+        for(int i = 0; i < chunks.length && exact; i++) {
+            SampleColumn block = chunks[i].columns[column];
+            exact = block.size() == 0 || block instanceof LongColumn && ((LongColumn) block).canRescale(decimals);
+        }
+        if(exact) {
+            DeltaColumn.Builder builder = new DeltaColumn.Builder(decimals);
+            for(Chunk chunk : chunks) {
+                if(chunk.columns[column] instanceof LongColumn) {
+                    builder.addAll((LongColumn) chunk.columns[column]);
+                }
+                chunk.columns[column] = null;
+            }
+            return builder.build();
+        }
+        if(compress) {
+            XorColumn.Builder builder = new XorColumn.Builder();
+            for(Chunk chunk : chunks) {
+                builder.addAll(chunk.columns[column]);
+                chunk.columns[column] = null;
+            }
+            return builder.build();
+        }
+        FloatColumn merged = new FloatColumn(rows);
+        for(Chunk chunk : chunks) {
+            SampleColumn block = chunk.columns[column];
+            if(block instanceof FloatColumn) {
+                merged.addAll((FloatColumn) block);
+            } else {
+                for(int i = 0; i < block.size(); i++) {
+                    merged.add(block.get(i));
+                }
+            }
+            chunk.columns[column] = null;
+        }
+        return merged;
+    }
+
+    private static class ParseChunksTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        ParseChunksTask(Chunk[] chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                try {
+                    chunks[from].parse();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseChunksTask(chunks, from, middle), new ParseChunksTask(chunks, middle, to));
+            }
+        }
+    }
+
+    /**
+     * A newline aligned byte range of the data section and the column block parsed from it.
+     */
+    private class Chunk {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final int numColumns;
+
+        private SampleColumn[] columns;
+        private ColumnBuilder[] builders;
+        private long[] rowOffsets;
+        private int lines = 0;
+        private int rows = 0;
+        private int errorLine = -1;
+        private int errorColumns = -1;
+        private String errorMessage;
+
+        Chunk(FileChannel channel, long start, long end, int numColumns) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.numColumns = numColumns;
+        }
+
+        void parse() throws IOException {
+            int length = (int) (end - start);
+            int estimatedRows = Math.max(16, length / (numColumns * 8 + 1));
+            columns = new SampleColumn[numColumns];
+            builders = new ColumnBuilder[numColumns];
+            for(int i = 0; i < numColumns; i++) {
+                if(eager == null || eager[i]) {
+                    builders[i] = new ColumnBuilder(estimatedRows, exact[i]);
+                }
+            }
+            if(eager != null) {
+                rowOffsets = new long[estimatedRows];
+            }
+            try {
+                if(length > 0) {
+                    parseLines(length);
+                }
+            } finally {
+                for(int i = 0; i < numColumns; i++) {
+                    if(builders[i] != null) {
+                        columns[i] = builders[i].finish();
+                    }
+                }
+                builders = null;
+            }
+        }
+
+        private void parseLines(int length) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            float[] row = new float[numColumns];
+            long[] ticks = new long[numColumns];
+            int[] decimals = new int[numColumns];
+            int position = 0;
+            int reported = 0;
+            while(position < length) {
+                if(position - reported >= PROGRESS_INTERVAL) {
+                    reportProgress(position - reported);
+                    reported = position;
+                    if(cancelled) {
+                        return;
+                    }
+                }
+                int lineEnd = position;
+                while(lineEnd < length && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if(!parseLine(buffer, position, lineEnd, row, ticks, decimals)) {
+                    errorLine = lines;
+                    return;
+                }
+                lines++;
+                position = lineEnd + 1;
+            }
+            reportProgress(length - reported);
+        }
+
+        /**
+         * @return false if the line is malformed, in which case the error fields describe why
+         */
+        private boolean parseLine(ByteBuffer buffer, int from, int to, float[] row, long[] ticks, int[] decimals) {
+            if(isBlank(buffer, from, to)) {
+                return true;
+            }
+
+            int cells = 0;
+            int nonEmptyCells = 0;
+            String numberError = null;
+            int cellStart = from;
+            for(int i = from; i <= to; i++) {
+                if(i < to && buffer.get(i) != ',') {
+                    continue;
+                }
+                int cellEnd = (i == to && i > from && buffer.get(i - 1) == '\r') ? i - 1 : i;
+                if(cellEnd > cellStart) {
+                    nonEmptyCells = cells + 1;
+                }
+                if(cells < numColumns && numberError == null && (eager == null || eager[cells])) {
+                    try {
+                        if(exact[cells] || isTimestamp(buffer, cellStart, cellEnd)) {
+                            row[cells] = parseCell(buffer, cellStart, cellEnd, ticks, decimals, cells);
+                        } else {
+                            row[cells] = parseFloat(buffer, cellStart, cellEnd);
+                            decimals[cells] = NOT_EXACT;
+                        }
+                    } catch (NumberFormatException e) {
+                        numberError = e.getMessage();
+                    }
+                }
+                cells++;
+                cellStart = i + 1;
+            }
+
+            // trailing empty cells are dropped, the same way String.split does
+            if(nonEmptyCells != numColumns) {
+                errorColumns = nonEmptyCells;
+                return false;
+            }
+            if(numberError != null) {
+                errorMessage = numberError;
+                return false;
+            }
+            for(int i = 0; i < numColumns; i++) {
+                if(builders[i] != null) {
+                    builders[i].add(row[i], ticks[i], decimals[i]);
+                }
+            }
+            if(rowOffsets != null) {
+                if(rows == rowOffsets.length) {
+                    rowOffsets = Arrays.copyOf(rowOffsets, rows + (rows >> 1) + 1);
+                }
+                rowOffsets[rows] = start + from;
+            }
+            rows++;
+            return true;
+        }
+
+        private boolean isBlank(ByteBuffer buffer, int from, int to) {
+            for(int i = from; i < to; i++) {
+                if(buffer.get(i) > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * One chunk's block of a column, or one batch of a {@link CsvTailer}'s. A column named exact, or one whose first
+     * cell is a timestamp, is kept as exact ticks until a cell turns out not to be exact, and as floats from then on.
+     * Any other column is floats throughout.
+     */
+    static class ColumnBuilder {
+        private LongColumn exact;
+        private FloatColumn floats;
+        private final int capacity;
+        private final boolean preferExact;
+
+        ColumnBuilder(int capacity, boolean preferExact) {
+            this.capacity = capacity;
+            this.preferExact = preferExact;
+        }
+
+        void add(float value, long tick, int decimals) {
+            if(floats == null) {
+                if(exact == null && (preferExact || decimals != NOT_EXACT)) {
+                    exact = new LongColumn(capacity);
+                }
+                if(exact == null) {
+                    floats = new FloatColumn(capacity);
+                } else if(decimals != NOT_EXACT && exact.add(tick, decimals)) {
+                    return;
+                } else {
+                    floats = exact.toFloatColumn(capacity);
+                    exact = null;
+                }
+            }
+            floats.add(value);
+        }
+
+        SampleColumn finish() {
+            if(floats != null) {
+                return floats;
+            }
+            return exact != null ? exact : new FloatColumn(1);
+        }
+    }
+
+    /**
+     * Whether a cell looks like an ISO-8601 timestamp rather than a number: a four digit year and a dash.
+     */
+    private static boolean isTimestamp(ByteBuffer buffer, int from, int to) {
+        while(from < to && buffer.get(from) <= ' ') {
+            from++;
+        }
+        return to - from >= 10 && buffer.get(from + 4) == '-' && isDigit(buffer.get(from));
+    }
+
+    /**
+     * Parse a cell into {@code row}'s float and, if it is a plain decimal or a timestamp, also store it exactly as
+     * {@code ticks[column]} of 10<sup>-decimals[column]</sup>; otherwise {@code decimals[column]} is
+     * {@value #NOT_EXACT}. Doesn't allocate for either.
+     */
+    static float parseCell(ByteBuffer buffer, int from, int to, long[] ticks, int[] decimals, int column)
+            throws NumberFormatException {
+        int start = from;
+        int end = to;
+        while(start < end && buffer.get(start) <= ' ') {
+            start++;
+        }
+        while(end > start && buffer.get(end - 1) <= ' ') {
+            end--;
+        }
+        decimals[column] = NOT_EXACT;
+        if(isTimestamp(buffer, start, end)) {
+            long micros = parseTimestamp(buffer, start, end);
+            ticks[column] = micros;
+            decimals[column] = TIMESTAMP_DECIMALS;
+            return (float) (micros / 1e6);
+        }
+
+        int i = start;
+        boolean negative = false;
+        if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for(; i < end; i++) {
+            byte b = buffer.get(i);
+            if(isDigit(b)) {
+                if(mantissa >= MAX_MANTISSA) {
+                    break;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if(fraction) {
+                    fractionDigits++;
+                }
+            } else if(b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if(i != end || digits == 0 || fractionDigits > DeltaColumn.MAX_DECIMALS) {
+            return parseFloat(buffer, from, to);
+        }
+        ticks[column] = negative ? -mantissa : mantissa;
+        decimals[column] = fractionDigits;
+        double value = fractionDigits == 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+        return (float) (negative ? -value : value);
+    }
+
+    /**
+     * Parse an ISO-8601 date and time, {@code 2024-05-01T12:30:00.250Z}, into microseconds since the epoch without
+     * allocating. The {@code T} may be a space, the fraction has up to nine digits of which those past microseconds
+     * are dropped, and the time zone is {@code Z}, an offset such as {@code +02:00} or {@code -0500}, or missing for
+     * UTC. A date without a time is midnight.
+     */
+    static long parseTimestamp(ByteBuffer buffer, int from, int to) throws NumberFormatException {
+        int year = digits(buffer, from, 4, to);
+        int month = expect(buffer, from + 4, '-', to) ? digits(buffer, from + 5, 2, to) : -1;
+        int day = expect(buffer, from + 7, '-', to) ? digits(buffer, from + 8, 2, to) : -1;
+        int i = from + 10;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        long micros = 0;
+        if(i < to && (buffer.get(i) == 'T' || buffer.get(i) == ' ')) {
+            hour = digits(buffer, i + 1, 2, to);
+            minute = expect(buffer, i + 3, ':', to) ? digits(buffer, i + 4, 2, to) : -1;
+            i += 6;
+            if(i < to && buffer.get(i) == ':') {
+                second = digits(buffer, i + 1, 2, to);
+                i += 3;
+                if(i < to && (buffer.get(i) == '.' || buffer.get(i) == ',')) {
+                    i++;
+                    int fractionDigits = 0;
+                    while(i < to && isDigit(buffer.get(i))) {
+                        if(fractionDigits < TIMESTAMP_DECIMALS) {
+                            micros = micros * 10 + (buffer.get(i) - '0');
+                        }
+                        fractionDigits++;
+                        i++;
+                    }
+                    if(fractionDigits == 0 || fractionDigits > 9) {
+                        second = -1;
+                    }
+                    for(int d = fractionDigits; d < TIMESTAMP_DECIMALS; d++) {
+                        micros *= 10;
+                    }
+                }
+            }
+        }
+        int offsetMinutes = 0;
+        if(i < to && buffer.get(i) == 'Z') {
+            i++;
+        } else if(i < to && (buffer.get(i) == '+' || buffer.get(i) == '-')) {
+            int sign = buffer.get(i) == '-' ? -1 : 1;
+            int hours = digits(buffer, i + 1, 2, to);
+            i += 3;
+            if(i < to && buffer.get(i) == ':') {
+                i++;
+            }
+            int minutes = digits(buffer, i, 2, to);
+            i += 2;
+            offsetMinutes = hours < 0 || minutes < 0 ? Integer.MIN_VALUE : sign * (hours * 60 + minutes);
+        }
+        if(i != to || year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60 || offsetMinutes == Integer.MIN_VALUE) {
+            byte[] bytes = new byte[to - from];
+            for(int b = 0; b < bytes.length; b++) {
+                bytes[b] = buffer.get(from + b);
+            }
+            throw new NumberFormatException("Invalid timestamp \"" + new String(bytes, StandardCharsets.UTF_8) + "\"");
+        }
+        long seconds = daysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second
+                - offsetMinutes * 60L;
+        return seconds * 1000000L + micros;
+    }
+
+    /**
+     * Days from 1970-01-01 to a date of the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * @return the number written by {@code count} digits at {@code from}, or -1 if they aren't all there
+     */
+    private static int digits(ByteBuffer buffer, int from, int count, int to) {
+        if(from + count > to) {
+            return -1;
+        }
+        int value = 0;
+        for(int i = from; i < from + count; i++) {
+            byte b = buffer.get(i);
+            if(!isDigit(b)) {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private static boolean expect(ByteBuffer buffer, int at, char expected, int to) {
+        return at < to && buffer.get(at) == expected;
+    }
+
+    /**
+     * Parse a decimal number without allocating. Anything unusual (hex, NaN, huge exponents) falls back
+     * to {@link Float#parseFloat(String)} so the accepted syntax stays the same.
+     */
+    static float parseFloat(ByteBuffer buffer, int from, int to) throws NumberFormatException {
+        int start = from;
+        int end = to;
+        while(start < end && buffer.get(start) <= ' ') {
+            start++;
+        }
+        while(end > start && buffer.get(end - 1) <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        // digits past the 18th cannot change a float result, so they are dropped instead of overflowing
+        long mantissa = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        while(i < end && isDigit(buffer.get(i))) {
+            if(mantissa < MAX_MANTISSA) {
+                mantissa = mantissa * 10 + (buffer.get(i) - '0');
+            } else {
+                exponent++;
+            }
+            seenDigit = true;
+            i++;
+        }
+        if(i < end && buffer.get(i) == '.') {
+            i++;
+            while(i < end && isDigit(buffer.get(i))) {
+                if(mantissa < MAX_MANTISSA) {
+                    mantissa = mantissa * 10 + (buffer.get(i) - '0');
+                    exponent--;
+                }
+                seenDigit = true;
+                i++;
+            }
+        }
+        if(seenDigit && i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            int explicitExponent = 0;
+            boolean seenExponentDigit = false;
+            while(i < end && isDigit(buffer.get(i)) && explicitExponent < 10000) {
+                explicitExponent = explicitExponent * 10 + (buffer.get(i) - '0');
+                seenExponentDigit = true;
+                i++;
+            }
+            if(!seenExponentDigit) {
+                return parseFloatSlow(buffer, from, to);
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if(!seenDigit || i != end || exponent < -22 || exponent > 22) {
+            return parseFloatSlow(buffer, from, to);
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return (float) (negative ? -value : value);
+    }
+
+    private static float parseFloatSlow(ByteBuffer buffer, int from, int to) throws NumberFormatException {
+        byte[] bytes = new byte[to - from];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return Float.parseFloat(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
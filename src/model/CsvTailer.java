@@ -0,0 +1,301 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows CSV text as it is written, from a file a logger is still appending to or from a socket, on a background
+ * thread. Only the newly arrived bytes are parsed, a complete line at a time, into columns that
+ * {@link #takePending()} hands over in batches. The first line is the header. Cells are parsed the way
+ * {@link CsvParser} does, so a batch of a column whose cells are all plain decimals or timestamps comes as exact
+ * ticks.
+ */
+public class CsvTailer implements Closeable {
+    private static final long POLL_INTERVAL_MILLIS = Long.getLong("labelme.tailPollMillis", 50);
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    // rows a batch has room for before it grows
+    private static final int PENDING_CAPACITY = 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = Integer.getInteger("labelme.streamConnectTimeoutMillis", 5000);
+
+    /**
+     * Where the text comes from.
+     */
+    private interface Source extends Closeable {
+        /**
+         * @return bytes read, 0 if there are none yet, or -1 if there will be no more
+         */
+        int read(byte[] buffer) throws IOException;
+    }
+
+    private final String name;
+    private final Source source;
+    private final Thread reader;
+    private final CountDownLatch headerRead = new CountDownLatch(1);
+    private volatile String[] headers;
+    private CsvParser.ColumnBuilder[] pending;
+    private int pendingRows = 0;
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+    private volatile long malformedRows = 0;
+
+    private byte[] line = new byte[256];
+    private ByteBuffer lineBuffer = ByteBuffer.wrap(line);
+    private int lineLength = 0;
+    private float[] row;
+    private long[] rowTicks;
+    private int[] rowDecimals;
+
+    private CsvTailer(String name, Source source) {
+        this.name = name;
+        this.source = source;
+        reader = new Thread(this::run, "csv-tailer-" + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Follow a file from its beginning, picking up whatever is appended to it.
+     */
+    public static CsvTailer tail(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        return new CsvTailer(file.getName(), new Source() {
+            private long position = 0;
+
+            @Override
+            public int read(byte[] buffer) throws IOException {
+                long length = randomAccessFile.length();
+                if(length < position) {
+                    throw new IOException(file + " was truncated while being followed");
+                }
+                if(length == position) {
+                    return 0;
+                }
+                randomAccessFile.seek(position);
+                int read = randomAccessFile.read(buffer, 0, (int) Math.min(buffer.length, length - position));
+                if(read > 0) {
+                    position += read;
+                }
+                return Math.max(read, 0);
+            }
+
+            @Override
+            public void close() throws IOException {
+                randomAccessFile.close();
+            }
+        });
+    }
+
+    /**
+     * Read CSV text sent by a logger listening on {@code host:port}, giving up if it doesn't accept the connection
+     * within {@code labelme.streamConnectTimeoutMillis} milliseconds.
+     */
+    public static CsvTailer connect(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        InputStream input;
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            input = socket.getInputStream();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return new CsvTailer(host + ":" + port, new Source() {
+            @Override
+            public int read(byte[] buffer) throws IOException {
+                return input.read(buffer);
+            }
+
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The header line's column names, or null until it has been read.
+     */
+    public String[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Wait for the header line.
+     *
+     * @throws IOException if reading failed or no header arrived in time
+     */
+    public String[] awaitHeaders(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        if(!headerRead.await(timeout, unit)) {
+            throw new IOException("No header received from " + name);
+        }
+        if(headers == null) {
+            IOException failed = failure;
+            throw failed != null ? failed : new IOException(name + " ended before its header");
+        }
+        return headers;
+    }
+
+    /**
+     * Take the rows parsed since the last call, one column per header, each an {@link ExactColumn} if its cells in
+     * the batch were all exact.
+     *
+     * @return null if no rows arrived
+     */
+    public synchronized SampleColumn[] takePending() {
+        if(pending == null || pendingRows == 0) {
+            return null;
+        }
+        SampleColumn[] taken = new SampleColumn[pending.length];
+        for(int i = 0; i < taken.length; i++) {
+            taken[i] = pending[i].finish();
+        }
+        pending = newColumns(headers.length);
+        pendingRows = 0;
+        return taken;
+    }
+
+    /**
+     * Lines skipped because they had the wrong number of values or a value that isn't a number.
+     */
+    public long getMalformedRows() {
+        return malformedRows;
+    }
+
+    /**
+     * The error that stopped reading, if any.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+        source.close();
+    }
+
+    private void run() {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        try {
+            while(!closed) {
+                int read = source.read(buffer);
+                if(read < 0) {
+                    break;
+                }
+                if(read == 0) {
+                    Thread.sleep(POLL_INTERVAL_MILLIS);
+                    continue;
+                }
+                consume(buffer, read);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (IOException e) {
+            if(!closed) {
+                failure = e;
+                e.printStackTrace();
+            }
+        } finally {
+            headerRead.countDown();
+        }
+    }
+
+    /**
+     * Split what was read into lines, parsing each complete one and keeping the incomplete end for next time.
+     */
+    private void consume(byte[] buffer, int length) {
+        int start = 0;
+        for(int i = 0; i < length; i++) {
+            if(buffer[i] == '\n') {
+                appendToLine(buffer, start, i - start);
+                parseLine();
+                lineLength = 0;
+                start = i + 1;
+            }
+        }
+        appendToLine(buffer, start, length - start);
+    }
+
+    private void appendToLine(byte[] buffer, int from, int length) {
+        if(lineLength + length > line.length) {
+            byte[] grown = new byte[Math.max(line.length * 2, lineLength + length)];
+            System.arraycopy(line, 0, grown, 0, lineLength);
+            line = grown;
+            lineBuffer = ByteBuffer.wrap(line);
+        }
+        System.arraycopy(buffer, from, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void parseLine() {
+        int end = lineLength;
+        if(end > 0 && line[end - 1] == '\r') {
+            end--;
+        }
+        if(headers == null) {
+            String[] parsedHeaders = new String(line, 0, end).split(",");
+            row = new float[parsedHeaders.length];
+            rowTicks = new long[parsedHeaders.length];
+            rowDecimals = new int[parsedHeaders.length];
+            synchronized(this) {
+                pending = newColumns(parsedHeaders.length);
+            }
+            headers = parsedHeaders;
+            headerRead.countDown();
+            return;
+        }
+        if(end == 0) {
+            return;
+        }
+
+        int column = 0;
+        int cellStart = 0;
+        try {
+            for(int i = 0; i <= end; i++) {
+                if(i == end || line[i] == ',') {
+                    if(column == row.length) {
+                        malformedRows++;
+                        return;
+                    }
+                    row[column] = CsvParser.parseCell(lineBuffer, cellStart, i, rowTicks, rowDecimals, column);
+                    column++;
+                    cellStart = i + 1;
+                }
+            }
+        } catch (NumberFormatException e) {
+            malformedRows++;
+            return;
+        }
+        if(column != row.length) {
+            malformedRows++;
+            return;
+        }
+        synchronized(this) {
+            for(int i = 0; i < row.length; i++) {
+                pending[i].add(row[i], rowTicks[i], rowDecimals[i]);
+            }
+            pendingRows++;
+        }
+    }
+
+    private static CsvParser.ColumnBuilder[] newColumns(int count) {
+        CsvParser.ColumnBuilder[] columns = new CsvParser.ColumnBuilder[count];
+        for(int i = 0; i < count; i++) {
+            columns[i] = new CsvParser.ColumnBuilder(PENDING_CAPACITY, false);
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,137 @@
+package model;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.Range;
+import org.jfree.data.xy.AbstractXYDataset;
+
+import java.security.InvalidKeyException;
+
+/**
+ * XYDataset that only exposes about two points per horizontal pixel of the visible time range, read from a
+ * {@link MinMaxPyramid}. The chart calls {@link #update} whenever its domain axis or width changes. Domain bounds are
+ * reported for the whole recording so auto-ranging still shows everything. The file's time offset is applied to the
+ * points as they are read, and a change of offset re-samples the current range, as does a change to the samples of a
+ * file that is still being written.
+ */
+public class DecimatedWaveformDataset extends AbstractXYDataset implements DomainInfo {
+    private static final long serialVersionUID = 1L;
+
+    private final String key;
+    private final WaveformFile file;
+    private final SampleColumn time;
+    private MinMaxPyramid pyramid;
+    private final Decimation decimation = new Decimation();
+    private final Runnable offsetChanged;
+    private final Runnable dataChanged;
+
+    private double start = Double.NaN;
+    private double end = Double.NaN;
+    private int pixels = -1;
+    private double offset = 0;
+
+    public DecimatedWaveformDataset(String key, WaveformFile file, MinMaxPyramid pyramid) {
+        this.key = key;
+        this.file = file;
+        this.time = file.getTimeColumn();
+        this.pyramid = pyramid;
+        Range bounds = getDomainBounds(false);
+        if(bounds != null) {
+            decimate(bounds.getLowerBound(), bounds.getUpperBound(), 1024);
+        }
+        offsetChanged = () -> {
+            decimate(start, end, pixels);
+            fireDatasetChanged();
+        };
+        dataChanged = () -> {
+            try {
+                this.pyramid = file.getPyramid(key);
+            } catch (InvalidKeyException e) {
+                return;
+            }
+            decimate(start, end, pixels);
+            fireDatasetChanged();
+        };
+        file.addOffsetListener(offsetChanged);
+        file.addDataListener(dataChanged);
+    }
+
+    /**
+     * Stop following the file, so a chart that is closed doesn't keep the dataset alive.
+     */
+    public void dispose() {
+        file.removeOffsetListener(offsetChanged);
+        file.removeDataListener(dataChanged);
+    }
+
+    /**
+     * Re-sample for a new visible range or plot width. Does nothing, and fires no event, if neither changed.
+     */
+    public void update(double start, double end, int pixels) {
+        if(start == this.start && end == this.end && pixels == this.pixels) {
+            return;
+        }
+        decimate(start, end, pixels);
+        fireDatasetChanged();
+    }
+
+    private void decimate(double start, double end, int pixels) {
+        this.start = start;
+        this.end = end;
+        this.pixels = pixels;
+        offset = file.getOffsetSeconds();
+        pyramid.decimate(time, start - offset, end - offset, pixels, decimation);
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return 1;
+    }
+
+    @Override
+    public Comparable<String> getSeriesKey(int series) {
+        return key;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return decimation.size();
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return decimation.getX(item) + offset;
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return decimation.getY(item);
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return decimation.getY(item);
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        return time.size() == 0 ? Double.NaN : file.toSharedTime(time.getDouble(0));
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        return time.size() == 0 ? Double.NaN : file.toSharedTime(time.getDouble(time.size() - 1));
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        if(time.size() == 0) {
+            return null;
+        }
+        return new Range(getDomainLowerBound(includeInterval), getDomainUpperBound(includeInterval));
+    }
+}
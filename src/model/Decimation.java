@@ -0,0 +1,38 @@
+package model;
+
+/**
+ * Reusable buffer of points produced by {@link MinMaxPyramid#decimate}. The arrays only grow, so repeated queries of a
+ * similar size do not allocate.
+ */
+public class Decimation {
+    private double[] x = new double[0];
+    private float[] y = new float[0];
+    private int size = 0;
+    final float[] range = new float[2];
+
+    public double getX(int index) {
+        return x[index];
+    }
+
+    public float getY(int index) {
+        return y[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    void clear(int capacity) {
+        if(x.length < capacity) {
+            x = new double[capacity];
+            y = new float[capacity];
+        }
+        size = 0;
+    }
+
+    void add(double xValue, float yValue) {
+        x[size] = xValue;
+        y[size] = yValue;
+        size++;
+    }
+}
@@ -0,0 +1,237 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exact ticks stored compactly for columns the parser found to hold only plain decimals or timestamps, such as a time
+ * column. The ticks are cut into segments of one {@link ChunkedColumn} chunk each, in the same layout as the delta
+ * encoded blocks of the cache, and each segment into blocks of {@value #BLOCK_SIZE}. A block keeps its first tick and
+ * its average step, and each tick only as its difference from the line those describe, zigzag encoded and bit packed
+ * at the width the largest difference needs. A column sampled at a steady rate takes zero to two bits per sample, yet
+ * any sample is still read in constant time.
+ *
+ * A segment is little-endian: the number of decimals and of blocks, an entry per block with its first tick, step,
+ * bit width and the long its bits start at, then the packed bits.
+ */
+public class DeltaColumn implements ExactColumn {
+    public static final int MAX_DECIMALS = 9;
+    static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L,
+            100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L,
+            10000000000000000L, 100000000000000000L, 1000000000000000000L
+    };
+    private static final int BLOCK_SHIFT = 10;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int BLOCK_ENTRY_BYTES = 24;
+
+    private final ByteBuffer[] segments;
+    private final int size;
+    private final int decimals;
+    private final double divisor;
+
+    private DeltaColumn(ByteBuffer[] segments, int size, int decimals) {
+        this.segments = segments;
+        this.size = size;
+        this.decimals = decimals;
+        this.divisor = POWERS_OF_TEN[decimals];
+    }
+
+    /**
+     * Builds a column from ticks added in order, encoding a segment whenever one fills up.
+     */
+    public static class Builder {
+        private final int decimals;
+        private final long[] pending = new long[ChunkedColumn.CHUNK_SIZE];
+        private final List<ByteBuffer> segments = new ArrayList<>();
+        private int filled = 0;
+        private long size = 0;
+
+        public Builder(int decimals) {
+            this.decimals = decimals;
+        }
+
+        public void add(long tick) {
+            pending[filled++] = tick;
+            if(filled == pending.length) {
+                flush();
+            }
+        }
+
+        /**
+         * Add every tick of {@code column}, converted to this builder's decimals, which must be at least as many.
+         */
+        public void addAll(ExactColumn column) {
+            long factor = POWERS_OF_TEN[decimals - column.getDecimals()];
+            for(int i = 0; i < column.size(); i++) {
+                add(column.getTick(i) * factor);
+            }
+        }
+
+        public DeltaColumn build() {
+            if(filled > 0) {
+                flush();
+            }
+            if(size > Integer.MAX_VALUE - 8) {
+                throw new OutOfMemoryError("Column is too large");
+            }
+            return new DeltaColumn(segments.toArray(new ByteBuffer[0]), (int) size, decimals);
+        }
+
+        private void flush() {
+            segments.add(encode(pending, filled, decimals));
+            size += filled;
+            filled = 0;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getDecimals() {
+        return decimals;
+    }
+
+    @Override
+    public long getTick(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return tickAt(segments[index >>> ChunkedColumn.CHUNK_SHIFT], 0, index & (ChunkedColumn.CHUNK_SIZE - 1));
+    }
+
+    @Override
+    public float get(int index) {
+        return (float) getDouble(index);
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return getTick(index) / divisor;
+    }
+
+    /**
+     * Bytes of heap taken by the encoded segments.
+     */
+    public long getHeapBytes() {
+        long bytes = 0;
+        for(ByteBuffer segment : segments) {
+            bytes += segment.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Encode {@code count} ticks, at most a chunk's worth, as one segment.
+     */
+    static ByteBuffer encode(long[] ticks, int count, int decimals) {
+        return encode(ticks, count, decimals, 0);
+    }
+
+    /**
+     * Same as {@link #encode(long[], int, int)}, leaving {@code headroom} bytes free at the start of the buffer for
+     * the caller's own header.
+     */
+    static ByteBuffer encode(long[] ticks, int count, int decimals, int headroom) {
+        int blocks = (count + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+        long[] firsts = new long[blocks];
+        long[] steps = new long[blocks];
+        int[] widths = new int[blocks];
+        int[] wordStarts = new int[blocks];
+        int words = 0;
+        for(int block = 0; block < blocks; block++) {
+            int from = block << BLOCK_SHIFT;
+            int length = Math.min(BLOCK_SIZE, count - from);
+            long first = ticks[from];
+            long step = length > 1 ? (ticks[from + length - 1] - first) / (length - 1) : 0;
+            long bits = 0;
+            for(int i = 0; i < length; i++) {
+                bits |= zigzag(ticks[from + i] - (first + i * step));
+            }
+            firsts[block] = first;
+            steps[block] = step;
+            widths[block] = 64 - Long.numberOfLeadingZeros(bits);
+            wordStarts[block] = words;
+            words += (int) (((long) length * widths[block] + 63) >>> 6);
+        }
+
+        int headerBytes = SEGMENT_HEADER_BYTES + blocks * BLOCK_ENTRY_BYTES;
+        ByteBuffer segment = ByteBuffer.allocate(headroom + headerBytes + words * Long.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        segment.position(headroom);
+        segment.putInt(decimals).putInt(blocks);
+        for(int block = 0; block < blocks; block++) {
+            segment.putLong(firsts[block]).putLong(steps[block]).putInt(widths[block]).putInt(wordStarts[block]);
+        }
+        long[] packed = new long[words];
+        for(int block = 0; block < blocks; block++) {
+            int width = widths[block];
+            if(width == 0) {
+                continue;
+            }
+            int from = block << BLOCK_SHIFT;
+            int length = Math.min(BLOCK_SIZE, count - from);
+            long bit = (long) wordStarts[block] << 6;
+            for(int i = 0; i < length; i++, bit += width) {
+                long value = zigzag(ticks[from + i] - (firsts[block] + i * steps[block]));
+                int word = (int) (bit >>> 6);
+                int shift = (int) (bit & 63);
+                packed[word] |= value << shift;
+                if(shift + width > 64) {
+                    packed[word + 1] |= value >>> (64 - shift);
+                }
+            }
+        }
+        for(long word : packed) {
+            segment.putLong(word);
+        }
+        segment.clear();
+        return segment;
+    }
+
+    /**
+     * The tick at {@code index} of the segment starting at {@code base} in a little-endian buffer.
+     */
+    static long tickAt(ByteBuffer segment, int base, int index) {
+        int block = index >>> BLOCK_SHIFT;
+        int entry = base + SEGMENT_HEADER_BYTES + block * BLOCK_ENTRY_BYTES;
+        int offset = index & (BLOCK_SIZE - 1);
+        long predicted = segment.getLong(entry) + offset * segment.getLong(entry + 8);
+        int width = segment.getInt(entry + 16);
+        if(width == 0) {
+            return predicted;
+        }
+        int words = base + SEGMENT_HEADER_BYTES + segment.getInt(base + 4) * BLOCK_ENTRY_BYTES;
+        long bit = ((long) segment.getInt(entry + 20) << 6) + (long) offset * width;
+        int word = words + (int) (bit >>> 6) * Long.BYTES;
+        int shift = (int) (bit & 63);
+        long value = segment.getLong(word) >>> shift;
+        if(shift + width > 64) {
+            value |= segment.getLong(word + Long.BYTES) << (64 - shift);
+        }
+        if(width < 64) {
+            value &= (1L << width) - 1;
+        }
+        return predicted + ((value >>> 1) ^ -(value & 1));
+    }
+
+    /**
+     * The decimals of the segment starting at {@code base}.
+     */
+    static int decimalsAt(ByteBuffer segment, int base) {
+        return segment.getInt(base);
+    }
+
+    /**
+     * Map small differences of either sign to small unsigned numbers.
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,11 @@
+package model;
+
+/**
+ * A column whose samples were written as plain decimals or ISO-8601 timestamps and are kept exactly, as integer ticks
+ * of 10<sup>-decimals</sup>. Timestamps are microseconds since the epoch, so their samples read as seconds.
+ */
+public interface ExactColumn extends SampleColumn {
+    int getDecimals();
+
+    long getTick(int index);
+}
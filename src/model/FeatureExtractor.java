@@ -0,0 +1,271 @@
+package model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes {@link LabelFeatures} for every label over every column of one file. Results are kept per label, so after a
+ * label is added or changed only that label is computed again. Each (label, column) pair is one pass over the
+ * column's samples into per-thread scratch arrays, and pairs are spread over the fork-join pool.
+ *
+ * The dominant frequency comes from the power spectrum of the samples. Labels longer than {@value #MAX_FFT_SIZE}
+ * samples are cut into segments of that size whose spectra are averaged, so memory stays fixed however long the
+ * label is.
+ */
+public class FeatureExtractor {
+    private static final int MAX_FFT_SIZE = 1 << 16;
+    private static final int RUN_LENGTH = 1024;
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private static class Scratch {
+        private double[] re = new double[0];
+        private double[] im = new double[0];
+        private double[] power = new double[0];
+        // samples are read a run at a time so compressed columns decode them in order
+        private final float[] run = new float[RUN_LENGTH];
+
+        void ensureCapacity(int size) {
+            if(re.length < size) {
+                re = new double[size];
+                im = new double[size];
+                power = new double[size / 2 + 1];
+            }
+        }
+    }
+
+    private final WaveformFile file;
+    private final Map<TimeLabel, LabelFeatures[]> computed = new IdentityHashMap<>();
+    private long generation = 0;
+
+    public FeatureExtractor(WaveformFile file) {
+        this.file = file;
+        // every label covers different samples once the file moves on the timeline
+        file.addOffsetListener(this::invalidate);
+    }
+
+    public WaveformFile getFile() {
+        return file;
+    }
+
+    public synchronized void invalidate() {
+        computed.clear();
+        generation++;
+    }
+
+    /**
+     * Compute features for labels that have none yet and forget labels that are gone.
+     *
+     * @return the features of every label, in label order and then column order
+     */
+    public List<LabelFeatures> update(Iterable<TimeLabel> labels) {
+        List<TimeLabel> current = new ArrayList<>();
+        List<TimeLabel> missing = new ArrayList<>();
+        long startGeneration;
+        synchronized(this) {
+            startGeneration = generation;
+            for(TimeLabel label : labels) {
+                current.add(label);
+                if(!computed.containsKey(label)) {
+                    missing.add(label);
+                }
+            }
+        }
+
+        String[] columns = getFeatureColumns();
+        LabelFeatures[][] results = new LabelFeatures[missing.size()][columns.length];
+        if(!missing.isEmpty() && columns.length > 0) {
+            new ComputeTask(missing, columns, results, 0, missing.size() * columns.length).invoke();
+        }
+
+        List<LabelFeatures> all = new ArrayList<>();
+        synchronized(this) {
+            // results computed across an invalidation are stale; those labels are picked up by the next update
+            if(generation == startGeneration) {
+                for(int i = 0; i < missing.size(); i++) {
+                    computed.put(missing.get(i), results[i]);
+                }
+            }
+            computed.keySet().retainAll(current);
+            for(TimeLabel label : current) {
+                LabelFeatures[] features = computed.get(label);
+                if(features != null) {
+                    all.addAll(Arrays.asList(features));
+                }
+            }
+        }
+        return all;
+    }
+
+    private String[] getFeatureColumns() {
+        List<String> columns = new ArrayList<>(file.getColumnHeaders());
+        columns.remove(file.getTimeColumnName());
+        return columns.toArray(new String[0]);
+    }
+
+    /**
+     * Features of one column over the samples inside {@code label}, in one pass over the samples.
+     */
+    public static LabelFeatures compute(WaveformFile file, TimeLabel label, String column) {
+        SampleColumn time = file.getTimeColumn();
+        SampleColumn values = file.getColumn(column);
+        int from = file.indexAtOrAfter(label.getStart());
+        int to = Math.min(values.size(), file.indexAt(label.getEnd()) + 1);
+        int segmentSize = Math.min(Fft.nextPowerOfTwo(Math.max(2, to - from)), MAX_FFT_SIZE);
+        Scratch buffers = scratch.get();
+        buffers.ensureCapacity(segmentSize);
+        double[] samples = buffers.re;
+        Arrays.fill(buffers.power, 0, segmentSize / 2 + 1, 0);
+
+        int count = 0;
+        double mean = 0;
+        double squaredDeviations = 0;
+        double sumOfSquares = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        int zeroCrossings = 0;
+        int previousSign = 0;
+        int filled = 0;
+        int segments = 0;
+        float[] run = buffers.run;
+        for(int i = from; i < to; i++) {
+            if((i - from) % RUN_LENGTH == 0) {
+                values.read(i, Math.min(to, i + RUN_LENGTH), run, 0);
+            }
+            float value = run[(i - from) % RUN_LENGTH];
+            if(Float.isNaN(value)) {
+                continue;
+            }
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            squaredDeviations += delta * (value - mean);
+            sumOfSquares += (double) value * value;
+            if(count == 1 || value < min) {
+                min = value;
+            }
+            if(count == 1 || value > max) {
+                max = value;
+            }
+            int sign = value > 0 ? 1 : value < 0 ? -1 : 0;
+            if(sign != 0) {
+                if(previousSign != 0 && sign != previousSign) {
+                    zeroCrossings++;
+                }
+                previousSign = sign;
+            }
+            samples[filled++] = value;
+            if(filled == segmentSize) {
+                accumulateSpectrum(buffers, filled, segmentSize);
+                segments++;
+                filled = 0;
+            }
+        }
+        if(segments == 0 && filled >= 2) {
+            accumulateSpectrum(buffers, filled, segmentSize);
+            segments++;
+        }
+
+        double dominantFrequency = Double.NaN;
+        if(segments > 0 && to - from >= 2) {
+            double duration = time.getDouble(to - 1) - time.getDouble(from);
+            double sampleRate = (to - from - 1) / duration;
+            int strongest = 0;
+            double strongestPower = 0;
+            for(int k = 1; k <= segmentSize / 2; k++) {
+                if(buffers.power[k] > strongestPower) {
+                    strongestPower = buffers.power[k];
+                    strongest = k;
+                }
+            }
+            if(strongest > 0 && duration > 0) {
+                dominantFrequency = strongest * sampleRate / segmentSize;
+            }
+        }
+
+        return new LabelFeatures(label, column, count, count == 0 ? Double.NaN : mean,
+                count == 0 ? Double.NaN : squaredDeviations / count,
+                count == 0 ? Double.NaN : Math.sqrt(sumOfSquares / count), min, max, zeroCrossings,
+                dominantFrequency);
+    }
+
+    /**
+     * Remove the mean of the first {@code filled} samples, zero-pad to {@code size} and add the power spectrum.
+     */
+    private static void accumulateSpectrum(Scratch buffers, int filled, int size) {
+        double[] re = buffers.re;
+        double[] im = buffers.im;
+        double mean = 0;
+        for(int i = 0; i < filled; i++) {
+            mean += re[i];
+        }
+        mean /= filled;
+        for(int i = 0; i < filled; i++) {
+            re[i] -= mean;
+        }
+        Arrays.fill(re, filled, size, 0);
+        Arrays.fill(im, 0, size, 0);
+        Fft.transform(re, im, size);
+        double[] power = buffers.power;
+        for(int k = 0; k <= size / 2; k++) {
+            power[k] += re[k] * re[k] + im[k] * im[k];
+        }
+    }
+
+    public static void writeCsv(Iterable<LabelFeatures> features, Writer writer) throws IOException {
+        writer.write("label_id,label,start,end,column,count,mean,variance,rms,min,max,zero_crossings,"
+                + "dominant_frequency\n");
+        for(LabelFeatures feature : features) {
+            TimeLabel label = feature.getLabel();
+            writer.write(label.getId() + ",");
+            String name = label.getName();
+            if(name.indexOf(',') >= 0 || name.indexOf('"') >= 0 || name.indexOf('\n') >= 0) {
+                name = '"' + name.replace("\"", "\"\"") + '"';
+            }
+            writer.write(name);
+            writer.write("," + label.getStart() + "," + label.getEnd() + "," + feature.getColumn() + ","
+                    + feature.getCount() + "," + feature.getMean() + "," + feature.getVariance() + ","
+                    + feature.getRms() + "," + feature.getMin() + "," + feature.getMax() + ","
+                    + feature.getZeroCrossings() + "," + feature.getDominantFrequency() + "\n");
+        }
+    }
+
+    /**
+     * Computes the (label, column) pairs in [from, to), numbered label-major.
+     */
+    private class ComputeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<TimeLabel> labels;
+        private final String[] columns;
+        private final LabelFeatures[][] results;
+        private final int from;
+        private final int to;
+
+        ComputeTask(List<TimeLabel> labels, String[] columns, LabelFeatures[][] results, int from, int to) {
+            this.labels = labels;
+            this.columns = columns;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                int label = from / columns.length;
+                int column = from % columns.length;
+                results[label][column] = FeatureExtractor.compute(file, labels.get(label), columns[column]);
+            } else if(to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ComputeTask(labels, columns, results, from, middle),
+                        new ComputeTask(labels, columns, results, middle, to));
+            }
+        }
+    }
+}
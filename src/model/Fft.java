@@ -0,0 +1,61 @@
+package model;
+
+/**
+ * In-place radix-2 fast Fourier transform over primitive arrays, so callers can reuse their buffers.
+ */
+public class Fft {
+    private Fft() {
+    }
+
+    public static int nextPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Transform the first {@code n} values of {@code re} and {@code im} in place. {@code n} must be a power of two.
+     */
+    public static void transform(double[] re, double[] im, int n) {
+        if(Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("FFT size " + n + " is not a power of two");
+        }
+        // bit reversal permutation
+        for(int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for(; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if(i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for(int length = 2; length <= n; length <<= 1) {
+            double angle = -2 * Math.PI / length;
+            double stepRe = Math.cos(angle);
+            double stepIm = Math.sin(angle);
+            int half = length >> 1;
+            for(int start = 0; start < n; start += length) {
+                double wRe = 1;
+                double wIm = 0;
+                for(int k = 0; k < half; k++) {
+                    int a = start + k;
+                    int b = a + half;
+                    double tRe = re[b] * wRe - im[b] * wIm;
+                    double tIm = re[b] * wIm + im[b] * wRe;
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] += tRe;
+                    im[a] += tIm;
+                    double nextRe = wRe * stepRe - wIm * stepIm;
+                    wIm = wRe * stepIm + wIm * stepRe;
+                    wRe = nextRe;
+                }
+            }
+        }
+    }
+}
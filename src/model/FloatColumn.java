@@ -0,0 +1,97 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Growable primitive float array holding the samples of one waveform column.
+ */
+public class FloatColumn implements SampleColumn {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private float[] data;
+    private int size;
+
+    public FloatColumn() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public FloatColumn(int capacity) {
+        data = new float[Math.max(capacity, 1)];
+        size = 0;
+    }
+
+    /**
+     * Wrap an already filled array without copying it.
+     */
+    public FloatColumn(float[] data) {
+        this.data = data;
+        size = data.length;
+    }
+
+    public void add(float value) {
+        if(size == data.length) {
+            data = Arrays.copyOf(data, grow(data.length));
+        }
+        data[size++] = value;
+    }
+
+    public void addAll(FloatColumn other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    @Override
+    public float get(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return data[index];
+    }
+
+    @Override
+    public void read(int from, int to, float[] out, int offset) {
+        if(from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for size " + size);
+        }
+        System.arraycopy(data, from, out, offset, to - from);
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Release the unused tail of the backing array once parsing is finished.
+     */
+    public void trim() {
+        if(data.length != size) {
+            data = Arrays.copyOf(data, size);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity < 0) {
+            throw new OutOfMemoryError("Column is too large");
+        }
+        if(capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, grow(data.length)));
+        }
+    }
+
+    private static int grow(int capacity) {
+        int grown = capacity + (capacity >> 1) + 1;
+        if(grown < 0 || grown > Integer.MAX_VALUE - 8) {
+            if(capacity == Integer.MAX_VALUE - 8) {
+                throw new OutOfMemoryError("Column is too large");
+            }
+            return Integer.MAX_VALUE - 8;
+        }
+        return grown;
+    }
+}
@@ -0,0 +1,104 @@
+package model;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes labels out as CSV or JSON one at a time, so exporting a large label set never holds more than a line of it
+ * as text.
+ */
+public class LabelExporter {
+    private LabelExporter() {
+    }
+
+    /**
+     * Export to {@code file}, as JSON if its name ends in {@code .json} and as CSV otherwise.
+     */
+    public static void export(Iterable<TimeLabel> labels, File file) throws IOException {
+        try(BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            if(file.getName().toLowerCase().endsWith(".json")) {
+                writeJson(labels, writer);
+            } else {
+                writeCsv(labels, writer);
+            }
+        }
+    }
+
+    public static void writeCsv(Iterable<TimeLabel> labels, Writer writer) throws IOException {
+        writer.write("id,start,end,name\n");
+        for(TimeLabel label : labels) {
+            writer.write(Long.toString(label.getId()));
+            writer.write(',');
+            writer.write(Double.toString(label.getStart()));
+            writer.write(',');
+            writer.write(Double.toString(label.getEnd()));
+            writer.write(',');
+            writeCsvField(label.getName(), writer);
+            writer.write('\n');
+        }
+    }
+
+    public static void writeJson(Iterable<TimeLabel> labels, Writer writer) throws IOException {
+        writer.write('[');
+        boolean first = true;
+        for(TimeLabel label : labels) {
+            writer.write(first ? "\n  " : ",\n  ");
+            first = false;
+            writer.write("{\"id\": ");
+            writer.write(Long.toString(label.getId()));
+            writer.write(", \"start\": ");
+            writer.write(Double.toString(label.getStart()));
+            writer.write(", \"end\": ");
+            writer.write(Double.toString(label.getEnd()));
+            writer.write(", \"name\": ");
+            writeJsonString(label.getName(), writer);
+            writer.write('}');
+        }
+        writer.write(first ? "]\n" : "\n]\n");
+    }
+
+    private static void writeCsvField(String value, Writer writer) throws IOException {
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static void writeJsonString(String value, Writer writer) throws IOException {
+        writer.write('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
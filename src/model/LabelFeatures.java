@@ -0,0 +1,77 @@
+package model;
+
+/**
+ * Summary statistics of one column over one label's interval.
+ */
+public class LabelFeatures {
+    private final TimeLabel label;
+    private final String column;
+    private final int count;
+    private final double mean;
+    private final double variance;
+    private final double rms;
+    private final double min;
+    private final double max;
+    private final int zeroCrossings;
+    private final double dominantFrequency;
+
+    LabelFeatures(TimeLabel label, String column, int count, double mean, double variance, double rms, double min,
+                  double max, int zeroCrossings, double dominantFrequency) {
+        this.label = label;
+        this.column = column;
+        this.count = count;
+        this.mean = mean;
+        this.variance = variance;
+        this.rms = rms;
+        this.min = min;
+        this.max = max;
+        this.zeroCrossings = zeroCrossings;
+        this.dominantFrequency = dominantFrequency;
+    }
+
+    public TimeLabel getLabel() {
+        return label;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Number of samples in the label, not counting NaNs.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getVariance() {
+        return variance;
+    }
+
+    public double getRms() {
+        return rms;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public int getZeroCrossings() {
+        return zeroCrossings;
+    }
+
+    /**
+     * Frequency in hertz of the strongest non-zero bin of the power spectrum, NaN if there were too few samples.
+     */
+    public double getDominantFrequency() {
+        return dominantFrequency;
+    }
+}
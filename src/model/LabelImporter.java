@@ -0,0 +1,91 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads labels from CSV files in the format written by {@link LabelExporter}. Only the {@code start} and {@code end}
+ * columns are required; {@code id} and {@code name} are used when present.
+ */
+public class LabelImporter {
+    private LabelImporter() {
+    }
+
+    public static List<TimeLabel> readCsv(File file) throws IOException, ParseException {
+        List<TimeLabel> labels = new ArrayList<>();
+        try(BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if(header == null) {
+                return labels;
+            }
+            List<String> columns = Arrays.asList(splitCsvLine(header));
+            int idColumn = columns.indexOf("id");
+            int startColumn = columns.indexOf("start");
+            int endColumn = columns.indexOf("end");
+            int nameColumn = columns.indexOf("name");
+            if(startColumn < 0 || endColumn < 0) {
+                throw new ParseException(file + " has no start and end columns", 1);
+            }
+
+            String line;
+            int lineNumber = 1;
+            while((line = reader.readLine()) != null) {
+                lineNumber++;
+                if(line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = splitCsvLine(line);
+                try {
+                    double start = Double.parseDouble(fields[startColumn]);
+                    double end = Double.parseDouble(fields[endColumn]);
+                    String name = nameColumn >= 0 && nameColumn < fields.length ? fields[nameColumn] : "";
+                    labels.add(idColumn >= 0 && idColumn < fields.length
+                            ? new TimeLabel(Long.parseLong(fields[idColumn]), start, end, name)
+                            : new TimeLabel(start, end, name));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new ParseException("Bad label on line " + lineNumber + " of " + file + ": " + line,
+                            lineNumber);
+                }
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Split one line of CSV, undoing the quoting {@link LabelExporter} applies to names.
+     */
+    private static String[] splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(quoted) {
+                if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if(c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if(c == '"') {
+                quoted = true;
+            } else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if(c != '\r') {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+}
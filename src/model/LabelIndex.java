@@ -0,0 +1,247 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Labels kept sorted by start time with a max-end segment tree on top, so the labels overlapping a time window can be
+ * found in O(log n + matches). Inserts are a binary search and an array copy; the tree is rebuilt lazily on the next
+ * query after a change.
+ */
+public class LabelIndex implements Iterable<TimeLabel> {
+    /**
+     * Receives each label overlapping a queried window, in order of start time.
+     */
+    public interface Visitor {
+        void visit(TimeLabel label);
+    }
+
+    private static final int BULK_INSERT_THRESHOLD = 64;
+    private static final Comparator<TimeLabel> BY_START = Comparator.comparingDouble(TimeLabel::getStart);
+
+    private TimeLabel[] labels = new TimeLabel[16];
+    private double[] starts = new double[16];
+    private int size = 0;
+
+    private double[] maxEnds = new double[0];
+    private int leaves = 0;
+    private boolean dirty = false;
+
+    private final List<Runnable> changeListeners = new ArrayList<>();
+
+    public void add(TimeLabel label) {
+        synchronized(this) {
+            insert(label);
+        }
+        fireChanged();
+    }
+
+    /**
+     * Add many labels at once. Large batches, such as a saved label set being loaded, are appended and sorted in one
+     * pass instead of being inserted one by one.
+     */
+    public void addAll(Collection<TimeLabel> newLabels) {
+        synchronized(this) {
+            if(newLabels.size() < BULK_INSERT_THRESHOLD) {
+                for(TimeLabel label : newLabels) {
+                    insert(label);
+                }
+            } else {
+                append(newLabels);
+            }
+        }
+        fireChanged();
+    }
+
+    public boolean remove(TimeLabel label) {
+        boolean removed = false;
+        synchronized(this) {
+            int index = lowerBound(label.getStart());
+            for(; index < size && starts[index] == label.getStart(); index++) {
+                if(labels[index] == label) {
+                    System.arraycopy(labels, index + 1, labels, index, size - index - 1);
+                    System.arraycopy(starts, index + 1, starts, index, size - index - 1);
+                    labels[--size] = null;
+                    dirty = true;
+                    removed = true;
+                    break;
+                }
+            }
+        }
+        if(removed) {
+            fireChanged();
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Visit every label overlapping [from, to].
+     */
+    public synchronized void query(double from, double to, Visitor visitor) {
+        if(size == 0) {
+            return;
+        }
+        if(dirty) {
+            rebuild();
+        }
+        // only labels starting at or before the end of the window can overlap it
+        int candidates = upperBound(to);
+        if(candidates > 0) {
+            query(1, 0, leaves, candidates, from, visitor);
+        }
+    }
+
+    public List<TimeLabel> query(double from, double to) {
+        List<TimeLabel> result = new ArrayList<>();
+        query(from, to, new Visitor() {
+            @Override
+            public void visit(TimeLabel label) {
+                result.add(label);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Listeners are told after every change, on the thread that made it.
+     */
+    public void addChangeListener(Runnable listener) {
+        synchronized(changeListeners) {
+            changeListeners.add(listener);
+        }
+    }
+
+    public void removeChangeListener(Runnable listener) {
+        synchronized(changeListeners) {
+            changeListeners.remove(listener);
+        }
+    }
+
+    @Override
+    public synchronized Iterator<TimeLabel> iterator() {
+        TimeLabel[] snapshot = Arrays.copyOf(labels, size);
+        return new Iterator<TimeLabel>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < snapshot.length;
+            }
+
+            @Override
+            public TimeLabel next() {
+                if(next >= snapshot.length) {
+                    throw new NoSuchElementException();
+                }
+                return snapshot[next++];
+            }
+        };
+    }
+
+    private void insert(TimeLabel label) {
+        if(size == labels.length) {
+            labels = Arrays.copyOf(labels, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+        }
+        int index = upperBound(label.getStart());
+        System.arraycopy(labels, index, labels, index + 1, size - index);
+        System.arraycopy(starts, index, starts, index + 1, size - index);
+        labels[index] = label;
+        starts[index] = label.getStart();
+        size++;
+        dirty = true;
+    }
+
+    private void append(Collection<TimeLabel> newLabels) {
+        int capacity = Math.max(labels.length, size + newLabels.size());
+        labels = Arrays.copyOf(labels, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        for(TimeLabel label : newLabels) {
+            labels[size++] = label;
+        }
+        // stable, so labels with equal starts keep their order
+        Arrays.sort(labels, 0, size, BY_START);
+        for(int i = 0; i < size; i++) {
+            starts[i] = labels[i].getStart();
+        }
+        dirty = true;
+    }
+
+    private void fireChanged() {
+        Runnable[] listeners;
+        synchronized(changeListeners) {
+            listeners = changeListeners.toArray(new Runnable[0]);
+        }
+        for(Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    private void rebuild() {
+        leaves = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        if(maxEnds.length < 2 * leaves) {
+            maxEnds = new double[2 * leaves];
+        }
+        Arrays.fill(maxEnds, Double.NEGATIVE_INFINITY);
+        for(int i = 0; i < size; i++) {
+            maxEnds[leaves + i] = labels[i].getEnd();
+        }
+        for(int node = leaves - 1; node >= 1; node--) {
+            maxEnds[node] = Math.max(maxEnds[2 * node], maxEnds[2 * node + 1]);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Report labels in the node's range [low, high) that are below {@code limit} and end at or after {@code from}.
+     */
+    private void query(int node, int low, int high, int limit, double from, Visitor visitor) {
+        if(low >= limit || maxEnds[node] < from) {
+            return;
+        }
+        if(high - low == 1) {
+            visitor.visit(labels[low]);
+            return;
+        }
+        int middle = (low + high) >>> 1;
+        query(2 * node, low, middle, limit, from, visitor);
+        query(2 * node + 1, middle, high, limit, from, visitor);
+    }
+
+    private int lowerBound(double value) {
+        int low = 0;
+        int high = size;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(starts[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(double value) {
+        int low = 0;
+        int high = size;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(starts[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
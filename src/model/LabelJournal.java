@@ -0,0 +1,392 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Saves labels as they are made, so a crash loses at most the last {@code labelme.journalSyncMillis} milliseconds
+ * (100 by default) of annotation. Adds and removes are appended to {@value #JOURNAL} by a background thread that
+ * syncs once per batch; when the journal grows past {@value #COMPACT_THRESHOLD} bytes the same thread writes every
+ * label to {@value #SNAPSHOT} and starts the journal again.
+ *
+ * Both files are little-endian: magic number, format version and a generation number, then records of
+ * {@code length, body, CRC-32 of body}. A record cut short by a crash fails its length or checksum and ends the replay
+ * there. Compaction writes the snapshot under the next generation before emptying the journal, and a journal older
+ * than the snapshot is skipped, so a crash between the two steps can't apply the old journal twice.
+ */
+public class LabelJournal implements Closeable {
+    private static final int MAGIC = 0x4c4a4d4c; // "LMJL"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 16;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final long SYNC_INTERVAL = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong("labelme.journalSyncMillis", 100));
+    private static final long COMPACT_THRESHOLD = 4L << 20;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final String SNAPSHOT = "labels.snapshot";
+    private static final String JOURNAL = "labels.journal";
+
+    /**
+     * A point in the queue that flush and close wait for.
+     */
+    private static class Barrier {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final boolean close;
+
+        Barrier(boolean close) {
+            this.close = close;
+        }
+    }
+
+    private static class Entry {
+        private final byte type;
+        private final TimeLabel label;
+
+        Entry(byte type, TimeLabel label) {
+            this.type = type;
+            this.label = label;
+        }
+    }
+
+    private final File directory;
+    private final LabelIndex labels;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final FileChannel journal;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long generation;
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+
+    public LabelJournal(LabelIndex labels) throws IOException {
+        this(getDefaultDirectory(), labels);
+    }
+
+    /**
+     * Replay the snapshot and journal in {@code directory} into {@code labels} and start journaling.
+     */
+    public LabelJournal(File directory, LabelIndex labels) throws IOException {
+        this.directory = directory;
+        this.labels = labels;
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create label directory " + directory);
+        }
+
+        Map<Long, TimeLabel> replayed = new LinkedHashMap<>();
+        long snapshotGeneration = 0;
+        File snapshotFile = new File(directory, SNAPSHOT);
+        if(snapshotFile.isFile()) {
+            try(FileChannel snapshot = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+                snapshotGeneration = readGeneration(snapshot);
+                replay(snapshot, replayed);
+            }
+        }
+
+        journal = FileChannel.open(new File(directory, JOURNAL).toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        long journalGeneration = journal.size() < HEADER_LENGTH ? -1 : readGeneration(journal);
+        long end = HEADER_LENGTH;
+        if(journalGeneration >= snapshotGeneration) {
+            end = replay(journal, replayed);
+        }
+        generation = Math.max(journalGeneration, snapshotGeneration);
+        if(journalGeneration < snapshotGeneration) {
+            // missing, or already folded into the snapshot by a compaction that didn't finish
+            resetJournal();
+        } else if(end < journal.size()) {
+            // drop a record torn by a crash so new ones follow the last good one
+            journal.truncate(end);
+            journal.force(true);
+        }
+        journal.position(end);
+
+        labels.addAll(replayed.values());
+        writer = new Thread(this::run, "label-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static File getDefaultDirectory() {
+        return new File(System.getProperty("user.home"), ".labelme" + File.separator + "labels");
+    }
+
+    public LabelIndex getLabels() {
+        return labels;
+    }
+
+    /**
+     * Add a label to the index and queue it to be saved.
+     */
+    public void add(TimeLabel label) {
+        checkOpen();
+        labels.add(label);
+        queue.add(new Entry(ADD, label));
+    }
+
+    /**
+     * Remove a label from the index and queue the removal to be saved.
+     */
+    public boolean remove(TimeLabel label) {
+        checkOpen();
+        if(!labels.remove(label)) {
+            return false;
+        }
+        queue.add(new Entry(REMOVE, label));
+        return true;
+    }
+
+    /**
+     * Wait until everything queued so far is on disk.
+     *
+     * @throws IOException if the background writer failed
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        await(new Barrier(false));
+    }
+
+    /**
+     * Save anything still queued and stop the background writer.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            await(new Barrier(true));
+        } finally {
+            journal.close();
+        }
+    }
+
+    private void checkOpen() {
+        if(closed) {
+            throw new IllegalStateException("Label journal is closed");
+        }
+    }
+
+    private void await(Barrier barrier) throws IOException {
+        queue.add(barrier);
+        try {
+            barrier.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving labels", e);
+        }
+        IOException failed = failure;
+        if(failed != null) {
+            throw failed;
+        }
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>();
+        boolean running = true;
+        while(running) {
+            try {
+                batch.add(queue.take());
+                // gather whatever else arrives within the sync interval so it shares one sync
+                long deadline = System.nanoTime() + SYNC_INTERVAL;
+                while(!(batch.get(batch.size() - 1) instanceof Barrier)) {
+                    Object next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if(next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                write(batch);
+                if(journal.size() > COMPACT_THRESHOLD) {
+                    compact();
+                }
+            } catch (IOException e) {
+                failure = e;
+                e.printStackTrace();
+            }
+            for(Object item : batch) {
+                if(item instanceof Barrier) {
+                    Barrier barrier = (Barrier) item;
+                    barrier.done.countDown();
+                    running &= !barrier.close;
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(List<Object> batch) throws IOException {
+        boolean written = false;
+        buffer.clear();
+        for(Object item : batch) {
+            if(item instanceof Entry) {
+                Entry entry = (Entry) item;
+                encode(entry.type, entry.label, journal);
+                written = true;
+            }
+        }
+        buffer.flip();
+        writeFully(journal, buffer);
+        if(written) {
+            journal.force(false);
+        }
+    }
+
+    /**
+     * Write every label to a new snapshot under the next generation, then empty the journal.
+     */
+    private void compact() throws IOException {
+        File snapshotFile = new File(directory, SNAPSHOT);
+        File temporary = new File(directory, SNAPSHOT + ".tmp");
+        try(FileChannel snapshot = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.clear();
+            putHeader(generation + 1);
+            for(TimeLabel label : labels) {
+                encode(ADD, label, snapshot);
+            }
+            buffer.flip();
+            writeFully(snapshot, buffer);
+            snapshot.force(true);
+        }
+        try {
+            Files.move(temporary.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        generation++;
+        resetJournal();
+    }
+
+    private void resetJournal() throws IOException {
+        journal.truncate(0);
+        buffer.clear();
+        putHeader(generation);
+        buffer.flip();
+        journal.position(0);
+        writeFully(journal, buffer);
+        journal.force(true);
+    }
+
+    private void putHeader(long generation) {
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(generation);
+    }
+
+    /**
+     * Append one record to the write buffer, first writing the buffer out to {@code channel} if it is full.
+     */
+    private void encode(byte type, TimeLabel label, FileChannel channel) throws IOException {
+        byte[] name = type == ADD ? label.getName().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int bodyLength = 1 + 8 + (type == ADD ? 8 + 8 + 4 + name.length : 0);
+        int recordLength = 4 + bodyLength + 4;
+        if(buffer.remaining() < recordLength) {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+            if(buffer.capacity() < recordLength) {
+                buffer = ByteBuffer.allocate(recordLength).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        buffer.putInt(bodyLength);
+        int bodyStart = buffer.position();
+        buffer.put(type).putLong(label.getId());
+        if(type == ADD) {
+            buffer.putDouble(label.getStart()).putDouble(label.getEnd()).putInt(name.length).put(name);
+        }
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + bodyStart, bodyLength);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private static long readGeneration(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        while(header.hasRemaining()) {
+            if(channel.read(header, header.position()) < 0) {
+                throw new IOException("Label file is too short");
+            }
+        }
+        header.flip();
+        if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a label file of version " + VERSION);
+        }
+        return header.getLong();
+    }
+
+    /**
+     * Apply every intact record after the header to {@code replayed}.
+     *
+     * @return the offset just past the last intact record
+     */
+    private static long replay(FileChannel channel, Map<Long, TimeLabel> replayed) throws IOException {
+        long size = channel.size();
+        if(size > Integer.MAX_VALUE) {
+            throw new IOException("Label file is too large");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        mapped.position(HEADER_LENGTH);
+        CRC32 crc = new CRC32();
+        while(mapped.remaining() >= 4) {
+            int recordStart = mapped.position();
+            int bodyLength = mapped.getInt();
+            if(bodyLength < 9 || bodyLength > mapped.remaining() - 4) {
+                mapped.position(recordStart);
+                break;
+            }
+            ByteBuffer body = mapped.slice().order(ByteOrder.LITTLE_ENDIAN);
+            body.limit(bodyLength);
+            crc.reset();
+            crc.update(body.duplicate());
+            if(mapped.getInt(recordStart + 4 + bodyLength) != (int) crc.getValue()) {
+                mapped.position(recordStart);
+                break;
+            }
+            byte type = body.get();
+            long id = body.getLong();
+            if(type == ADD) {
+                double start = body.getDouble();
+                double end = body.getDouble();
+                byte[] name = new byte[body.getInt()];
+                body.get(name);
+                replayed.put(id, new TimeLabel(id, start, end, new String(name, StandardCharsets.UTF_8)));
+            } else if(type == REMOVE) {
+                replayed.remove(id);
+            }
+            mapped.position(recordStart + 4 + bodyLength + 4);
+        }
+        return mapped.position();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Column of a wide CSV file that is only decoded from the file the first time a sample is read. Decoded columns are
+ * kept in a least recently used cache limited to {@code labelme.lazyColumnBudgetMB} megabytes (a quarter of the
+ * maximum heap by default); evicted columns are decoded again when next needed. Pinned columns, such as the time
+ * column, are never evicted.
+ */
+public class LazyCsvColumn implements SampleColumn {
+    private static final long BUDGET_BYTES = Long.getLong("labelme.lazyColumnBudgetMB",
+            Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024)) * 1024 * 1024;
+    private static final Map<LazyCsvColumn, Long> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private static long residentBytes = 0;
+
+    private final Source source;
+    private final int index;
+    private volatile FloatColumn decoded;
+    private volatile boolean pinned = false;
+
+    LazyCsvColumn(Source source, int index) {
+        this.source = source;
+        this.index = index;
+    }
+
+    @Override
+    public int size() {
+        return source.rowOffsets.length;
+    }
+
+    @Override
+    public float get(int index) {
+        FloatColumn column = decoded;
+        if(column == null) {
+            column = materialize();
+        }
+        return column.get(index);
+    }
+
+    /**
+     * Decode the column now if it isn't already, rather than on the next read.
+     *
+     * @throws NumberFormatException if a cell isn't a number
+     * @throws UncheckedIOException if the file can't be read
+     */
+    public void decode() {
+        if(decoded == null) {
+            materialize();
+        }
+    }
+
+    public boolean isMaterialized() {
+        return decoded != null;
+    }
+
+    public void setPinned(boolean pinned) {
+        this.pinned = pinned;
+    }
+
+    /**
+     * Mark the column as recently used so it is the last to be evicted.
+     */
+    public void touch() {
+        synchronized(resident) {
+            resident.get(this);
+        }
+    }
+
+    /**
+     * Drop the decoded samples now rather than waiting for them to be evicted, unless the column is pinned. They are
+     * decoded again if the column is read later.
+     */
+    public void release() {
+        synchronized(resident) {
+            Long bytes = pinned ? null : resident.remove(this);
+            if(bytes != null) {
+                decoded = null;
+                residentBytes -= bytes;
+            }
+        }
+    }
+
+    private synchronized FloatColumn materialize() {
+        if(decoded == null) {
+            try {
+                decoded = source.decode(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            admit(this, (long) decoded.size() * Float.BYTES);
+        }
+        return decoded;
+    }
+
+    private static void admit(LazyCsvColumn column, long bytes) {
+        synchronized(resident) {
+            resident.put(column, bytes);
+            residentBytes += bytes;
+            Iterator<Map.Entry<LazyCsvColumn, Long>> iterator = resident.entrySet().iterator();
+            while(residentBytes > BUDGET_BYTES && iterator.hasNext()) {
+                Map.Entry<LazyCsvColumn, Long> entry = iterator.next();
+                LazyCsvColumn candidate = entry.getKey();
+                if(candidate == column || candidate.pinned) {
+                    continue;
+                }
+                candidate.decoded = null;
+                residentBytes -= entry.getValue();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Where each data row starts in the file, recorded during the initial pass.
+     */
+    static class Source {
+        private static final long MAX_SEGMENT_SIZE = 1L << 28;
+
+        private final File file;
+        private final long[] rowOffsets;
+        private final long dataEnd;
+
+        Source(File file, long[] rowOffsets, long dataEnd) {
+            this.file = file;
+            this.rowOffsets = rowOffsets;
+            this.dataEnd = dataEnd;
+        }
+
+        FloatColumn decode(int column) throws IOException {
+            float[] values = new float[rowOffsets.length];
+            try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                FileChannel channel = randomAccessFile.getChannel()) {
+                List<int[]> segments = split();
+                try {
+                    new DecodeTask(channel, segments, 0, segments.size(), column, values).invoke();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } catch (NumberFormatException e) {
+                    // one thrown on another worker comes back as a copy without its message, caused by the original
+                    throw e.getCause() instanceof NumberFormatException ? (NumberFormatException) e.getCause() : e;
+                }
+            }
+            return new FloatColumn(values);
+        }
+
+        /**
+         * Cut the rows into ranges of at most {@link #MAX_SEGMENT_SIZE} bytes, a few per core.
+         */
+        private List<int[]> split() {
+            List<int[]> segments = new ArrayList<>();
+            int rows = rowOffsets.length;
+            int target = Math.max(1, rows / (ForkJoinPool.getCommonPoolParallelism() * 4));
+            int from = 0;
+            while(from < rows) {
+                int to = Math.min(rows, from + target);
+                while(to - from > 1 && end(to) - rowOffsets[from] > MAX_SEGMENT_SIZE) {
+                    to = from + (to - from) / 2;
+                }
+                segments.add(new int[] {from, to});
+                from = to;
+            }
+            return segments;
+        }
+
+        private long end(int row) {
+            return row < rowOffsets.length ? rowOffsets[row] : dataEnd;
+        }
+
+        private void decode(FileChannel channel, int from, int to, int column, float[] values) throws IOException {
+            long base = rowOffsets[from];
+            int length = (int) (end(to) - base);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+            for(int row = from; row < to; row++) {
+                int position = (int) (rowOffsets[row] - base);
+                int limit = (int) (end(row + 1) - base);
+                for(int skipped = 0; skipped < column && position < limit; position++) {
+                    if(buffer.get(position) == ',') {
+                        skipped++;
+                    }
+                }
+                int cellEnd = position;
+                while(cellEnd < limit && buffer.get(cellEnd) != ',' && buffer.get(cellEnd) != '\n') {
+                    cellEnd++;
+                }
+                try {
+                    values[row] = CsvParser.parseFloat(buffer, position, cellEnd);
+                } catch (NumberFormatException e) {
+                    throw new NumberFormatException(e.getMessage() + " in column " + column + " of data row " + row);
+                }
+            }
+        }
+
+        private class DecodeTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final FileChannel channel;
+            private final List<int[]> segments;
+            private final int from;
+            private final int to;
+            private final int column;
+            private final float[] values;
+
+            DecodeTask(FileChannel channel, List<int[]> segments, int from, int to, int column, float[] values) {
+                this.channel = channel;
+                this.segments = segments;
+                this.from = from;
+                this.to = to;
+                this.column = column;
+                this.values = values;
+            }
+
+            @Override
+            protected void compute() {
+                if(to - from <= 1) {
+                    for(int i = from; i < to; i++) {
+                        try {
+                            decode(channel, segments.get(i)[0], segments.get(i)[1], column, values);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                } else {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new DecodeTask(channel, segments, from, middle, column, values),
+                            new DecodeTask(channel, segments, middle, to, column, values));
+                }
+            }
+        }
+    }
+}
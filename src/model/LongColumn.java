@@ -0,0 +1,121 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of exact ticks, which the parser fills while a column's cells are all plain decimals or timestamps.
+ * A cell with more decimals than those before it rescales the ticks already added, as long as they still fit in a
+ * long.
+ */
+public class LongColumn implements ExactColumn {
+    private long[] ticks;
+    private int size = 0;
+    private int decimals = 0;
+    private double divisor = 1;
+    // largest magnitude added, to tell whether rescaling would overflow without looking at every tick
+    private long maxMagnitude = 0;
+
+    public LongColumn(int capacity) {
+        ticks = new long[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Add a tick of 10<sup>-decimals</sup>.
+     *
+     * @return false, adding nothing, if it can't be stored exactly along with the ticks already added
+     */
+    public boolean add(long tick, int decimals) {
+        if(size == 0) {
+            setDecimals(decimals);
+        } else if(decimals > this.decimals) {
+            if(!rescale(decimals)) {
+                return false;
+            }
+        } else if(decimals < this.decimals) {
+            long factor = DeltaColumn.POWERS_OF_TEN[this.decimals - decimals];
+            if(Math.abs(tick) > Long.MAX_VALUE / factor) {
+                return false;
+            }
+            tick *= factor;
+        }
+        if(size == ticks.length) {
+            ticks = Arrays.copyOf(ticks, size + (size >> 1) + 1);
+        }
+        ticks[size++] = tick;
+        maxMagnitude = Math.max(maxMagnitude, Math.abs(tick));
+        return true;
+    }
+
+    /**
+     * Whether the ticks can be rescaled to {@code decimals} without overflowing.
+     */
+    public boolean canRescale(int decimals) {
+        return decimals <= this.decimals
+                || maxMagnitude <= Long.MAX_VALUE / DeltaColumn.POWERS_OF_TEN[decimals - this.decimals];
+    }
+
+    /**
+     * Multiply the ticks up to a finer resolution.
+     *
+     * @return false, changing nothing, if they would overflow
+     */
+    public boolean rescale(int decimals) {
+        if(decimals <= this.decimals) {
+            return decimals == this.decimals;
+        }
+        if(!canRescale(decimals)) {
+            return false;
+        }
+        long factor = DeltaColumn.POWERS_OF_TEN[decimals - this.decimals];
+        for(int i = 0; i < size; i++) {
+            ticks[i] *= factor;
+        }
+        maxMagnitude *= factor;
+        setDecimals(decimals);
+        return true;
+    }
+
+    private void setDecimals(int decimals) {
+        this.decimals = decimals;
+        divisor = DeltaColumn.POWERS_OF_TEN[decimals];
+    }
+
+    /**
+     * The same samples as floats, for when a later cell turns out not to be exact.
+     */
+    public FloatColumn toFloatColumn(int capacity) {
+        FloatColumn column = new FloatColumn(Math.max(capacity, size));
+        for(int i = 0; i < size; i++) {
+            column.add(get(i));
+        }
+        return column;
+    }
+
+    @Override
+    public int getDecimals() {
+        return decimals;
+    }
+
+    @Override
+    public long getTick(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return ticks[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public float get(int index) {
+        return (float) getDouble(index);
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return getTick(index) / divisor;
+    }
+}
@@ -0,0 +1,321 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Multi-resolution min/max summary of one column. Level 0 holds the min and max of every {@value #BASE_BUCKET}
+ * samples and each further level merges {@value #FANOUT} buckets of the level below, so the min/max of any index
+ * range can be found by touching a few dozen values regardless of its length. The whole pyramid costs about 8% of
+ * the column it summarizes. For an {@link XorColumn} level 0 is the column's own block headers instead, so the
+ * column is never decoded to build it, and the samples at the ends of a range are only decoded when their block
+ * could change the result.
+ *
+ * A pyramid can follow a column that is appended to and dropped from the front of, such as a stream's
+ * {@link RingFloatColumn}, through {@link #update}, which only summarizes the new samples.
+ */
+public class MinMaxPyramid {
+    public static final int BASE_BUCKET = 32;
+    public static final int FANOUT = 4;
+    // base buckets read at a time while building, in one sequential pass over the column
+    private static final int READ_BUCKETS = 128;
+
+    private final SampleColumn values;
+    private final XorColumn compressed;
+    private final int baseBucket;
+    // levels are added as samples are appended; each drops its leading buckets once all their samples are gone
+    private float[][] mins;
+    private float[][] maxs;
+    // number of the bucket at index 0 of each level, and one past the last bucket filled, counted from the first
+    // sample the column ever had so bucket boundaries stay put when samples are dropped from the front
+    private long[] firstBuckets;
+    private long[] endBuckets;
+    // samples dropped from the front of the column so far, and samples summarized after them
+    private long dropped = 0;
+    private int summarized = 0;
+
+    public MinMaxPyramid(SampleColumn values) {
+        this.values = values;
+        // a compressed column already knows the min and max of each of its blocks
+        compressed = values instanceof XorColumn ? (XorColumn) values : null;
+        baseBucket = compressed != null ? XorColumn.BLOCK_SIZE : BASE_BUCKET;
+        mins = new float[][] {new float[0]};
+        maxs = new float[][] {new float[0]};
+        firstBuckets = new long[1];
+        endBuckets = new long[1];
+        append();
+    }
+
+    /**
+     * Catch up with a column that had {@code removed} samples dropped from its front and new ones appended since the
+     * pyramid was built or last updated. Only the buckets the new samples fall in are touched; buckets whose samples
+     * were all dropped are forgotten as their level fills up, and the one the first kept sample falls in keeps the
+     * dropped samples' extremes, which only makes {@link #minMax} read a few more samples at the start.
+     */
+    public void update(int removed) {
+        if(removed < 0) {
+            throw new IllegalArgumentException("Can't remove " + removed + " samples");
+        }
+        dropped += removed;
+        summarized -= removed;
+        append();
+    }
+
+    /**
+     * Summarize the samples after the first {@link #summarized} into every level, adding levels while the top one has
+     * more than one bucket.
+     */
+    private void append() {
+        int total = values.size();
+        // samples that were appended and dropped again between updates are skipped
+        int start = Math.max(summarized, 0);
+        if(total <= start && summarized >= 0) {
+            return;
+        }
+        long changed = (dropped + start) / baseBucket;
+        fill(0, bucketCount(dropped + total, baseBucket), baseBucket);
+        float[] baseMins = mins[0];
+        float[] baseMaxs = maxs[0];
+        long offset = firstBuckets[0];
+        if(compressed != null) {
+            for(long bucket = changed; bucket < endBuckets[0]; bucket++) {
+                baseMins[(int) (bucket - offset)] = compressed.blockMin((int) bucket);
+                baseMaxs[(int) (bucket - offset)] = compressed.blockMax((int) bucket);
+            }
+        } else if(start < total) {
+            float[] samples = new float[Math.min(total - start, READ_BUCKETS * baseBucket)];
+            for(int chunk = start; chunk < total; chunk += samples.length) {
+                int chunkEnd = Math.min(total, chunk + samples.length);
+                values.read(chunk, chunkEnd, samples, 0);
+                for(int i = chunk; i < chunkEnd; ) {
+                    long bucket = (dropped + i) / baseBucket;
+                    int bucketEnd = (int) Math.min(chunkEnd, (bucket + 1) * baseBucket - dropped);
+                    int index = (int) (bucket - offset);
+                    // the bucket may already hold samples from the last update
+                    float min = baseMins[index];
+                    float max = baseMaxs[index];
+                    for(; i < bucketEnd; i++) {
+                        float value = samples[i - chunk];
+                        if(value < min) {
+                            min = value;
+                        }
+                        if(value > max) {
+                            max = value;
+                        }
+                    }
+                    baseMins[index] = min;
+                    baseMaxs[index] = max;
+                }
+            }
+        }
+        summarized = total;
+
+        long span = baseBucket;
+        for(int level = 1; level < mins.length || liveBuckets(level - 1, span) > 1; level++) {
+            if(level == mins.length) {
+                addLevel();
+            }
+            span *= FANOUT;
+            changed = Math.min(changed / FANOUT, endBuckets[level]);
+            fill(level, bucketCount(endBuckets[level - 1], FANOUT), span);
+            float[] lowerMins = mins[level - 1];
+            float[] lowerMaxs = maxs[level - 1];
+            long lowerOffset = firstBuckets[level - 1];
+            long lowerEnd = endBuckets[level - 1];
+            offset = firstBuckets[level];
+            for(long bucket = Math.max(changed, offset); bucket < endBuckets[level]; bucket++) {
+                int index = (int) (bucket - offset);
+                float min = mins[level][index];
+                float max = maxs[level][index];
+                long end = Math.min(lowerEnd, (bucket + 1) * FANOUT);
+                for(long i = Math.max(lowerOffset, bucket * FANOUT); i < end; i++) {
+                    min = Math.min(min, lowerMins[(int) (i - lowerOffset)]);
+                    max = Math.max(max, lowerMaxs[(int) (i - lowerOffset)]);
+                }
+                mins[level][index] = min;
+                maxs[level][index] = max;
+            }
+        }
+    }
+
+    /**
+     * Buckets of {@code level}, each {@code span} samples wide, that still hold kept samples.
+     */
+    private long liveBuckets(int level, long span) {
+        return endBuckets[level] - dropped / span;
+    }
+
+    private void addLevel() {
+        int levels = mins.length;
+        mins = Arrays.copyOf(mins, levels + 1);
+        maxs = Arrays.copyOf(maxs, levels + 1);
+        firstBuckets = Arrays.copyOf(firstBuckets, levels + 1);
+        endBuckets = Arrays.copyOf(endBuckets, levels + 1);
+        mins[levels] = new float[0];
+        maxs[levels] = new float[0];
+        firstBuckets[levels] = firstBuckets[levels - 1] / FANOUT;
+        endBuckets[levels] = firstBuckets[levels];
+    }
+
+    /**
+     * Make room for the buckets of {@code level} up to {@code end}, and empty the new ones. Buckets whose samples
+     * were all dropped are let go when the level runs out of room, and the level doubles if that doesn't free half.
+     */
+    private void fill(int level, long end, long span) {
+        long first = firstBuckets[level];
+        float[] levelMins = mins[level];
+        if(end - first > levelMins.length) {
+            long live = Math.max(first, dropped / span);
+            int needed = (int) (end - live);
+            int capacity = needed <= levelMins.length / 2 ? levelMins.length : Math.max(needed, 2 * levelMins.length);
+            int kept = (int) Math.max(0, endBuckets[level] - live);
+            float[] keptMins = new float[capacity];
+            float[] keptMaxs = new float[capacity];
+            if(kept > 0) {
+                System.arraycopy(levelMins, (int) (live - first), keptMins, 0, kept);
+                System.arraycopy(maxs[level], (int) (live - first), keptMaxs, 0, kept);
+            }
+            mins[level] = keptMins;
+            maxs[level] = keptMaxs;
+            firstBuckets[level] = live;
+            endBuckets[level] = Math.max(endBuckets[level], live);
+        }
+        for(long bucket = endBuckets[level]; bucket < end; bucket++) {
+            mins[level][(int) (bucket - firstBuckets[level])] = Float.POSITIVE_INFINITY;
+            maxs[level][(int) (bucket - firstBuckets[level])] = Float.NEGATIVE_INFINITY;
+        }
+        endBuckets[level] = Math.max(endBuckets[level], end);
+    }
+
+    /**
+     * Bytes of heap taken by the pyramid's own arrays.
+     */
+    public long getHeapBytes() {
+        long bytes = 0;
+        for(int level = 0; level < mins.length; level++) {
+            bytes += ((long) mins[level].length + maxs[level].length) * Float.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Reduce the samples whose time falls in [start, end] to at most two points per bucket, keeping the minimum and
+     * maximum of each so spikes stay visible. One sample either side of the range is included so lines run off the
+     * edge of the plot. Ranges that already fit in the buckets are copied unchanged.
+     */
+    public void decimate(SampleColumn time, double start, double end, int buckets, Decimation out) {
+        int size = Math.min(time.size(), values.size());
+        int from = Math.max(0, TimeIndex.lowerBound(time, size, start) - 1);
+        int to = Math.min(size, TimeIndex.lowerBound(time, size, end) + 1);
+        int count = to - from;
+        buckets = Math.max(1, buckets);
+
+        if(count <= 2 * buckets) {
+            out.clear(Math.max(count, 0));
+            for(int i = from; i < to; i++) {
+                out.add(time.getDouble(i), values.get(i));
+            }
+            return;
+        }
+
+        out.clear(2 * buckets);
+        float[] range = out.range;
+        float previous = Float.NaN;
+        for(int bucket = 0; bucket < buckets; bucket++) {
+            int bucketStart = from + (int) ((long) bucket * count / buckets);
+            int bucketEnd = from + (int) ((long) (bucket + 1) * count / buckets);
+            if(bucketStart >= bucketEnd) {
+                continue;
+            }
+            minMax(bucketStart, bucketEnd, range);
+            if(range[0] > range[1]) {
+                continue; // nothing but NaNs
+            }
+            double x = time.getDouble(bucketStart);
+            // start with whichever extreme is closer to the previous point so the line doesn't zig-zag
+            if(!Float.isNaN(previous) && Math.abs(range[1] - previous) < Math.abs(range[0] - previous)) {
+                out.add(x, range[1]);
+                out.add(x, range[0]);
+                previous = range[0];
+            } else {
+                out.add(x, range[0]);
+                out.add(x, range[1]);
+                previous = range[1];
+            }
+        }
+    }
+
+    /**
+     * Store the min and max of the samples in [from, to) into {@code range[0]} and {@code range[1]}.
+     */
+    public void minMax(int from, int to, float[] range) {
+        range[0] = Float.POSITIVE_INFINITY;
+        range[1] = Float.NEGATIVE_INFINITY;
+        long first = (dropped + from + baseBucket - 1) / baseBucket;
+        long last = (dropped + to) / baseBucket;
+        if(first >= last) {
+            readSamples(from, to, range);
+            return;
+        }
+
+        // climb the levels, taking unaligned buckets at each end until the rest fits a coarser bucket
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        int alignedFrom = (int) (first * baseBucket - dropped);
+        int alignedTo = (int) (last * baseBucket - dropped);
+        for(int level = 0; level < mins.length && first < last; level++) {
+            boolean top = level == mins.length - 1;
+            float[] levelMins = mins[level];
+            float[] levelMaxs = maxs[level];
+            long offset = firstBuckets[level];
+            while(first < last && (top || first % FANOUT != 0)) {
+                min = Math.min(min, levelMins[(int) (first - offset)]);
+                max = Math.max(max, levelMaxs[(int) (first - offset)]);
+                first++;
+            }
+            while(last > first && last % FANOUT != 0) {
+                last--;
+                min = Math.min(min, levelMins[(int) (last - offset)]);
+                max = Math.max(max, levelMaxs[(int) (last - offset)]);
+            }
+            first /= FANOUT;
+            last /= FANOUT;
+        }
+        range[0] = min;
+        range[1] = max;
+
+        // then the unaligned samples at either end
+        readSamples(from, alignedFrom, range);
+        readSamples(alignedTo, to, range);
+    }
+
+    /**
+     * Widen {@code range} to the samples in [from, to), skipping those whose bucket lies inside it already.
+     */
+    private void readSamples(int from, int to, float[] range) {
+        float min = range[0];
+        float max = range[1];
+        while(from < to) {
+            long bucket = (dropped + from) / baseBucket;
+            int end = (int) Math.min(to, (bucket + 1) * baseBucket - dropped);
+            int index = (int) (bucket - firstBuckets[0]);
+            if(mins[0][index] < min || maxs[0][index] > max) {
+                for(int i = from; i < end; i++) {
+                    float value = values.get(i);
+                    if(value < min) {
+                        min = value;
+                    }
+                    if(value > max) {
+                        max = value;
+                    }
+                }
+            }
+            from = end;
+        }
+        range[0] = min;
+        range[1] = max;
+    }
+
+    private static long bucketCount(long size, int bucketSize) {
+        return (size + bucketSize - 1) / bucketSize;
+    }
+}
@@ -0,0 +1,375 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Presentation times of every frame and keyframe of the video track of an MP4 file, read from the sample tables in
+ * its {@code moov} box without decoding any video. Times are in seconds on the player's clock: the decoding times
+ * from {@code stts}, moved by the composition offsets in {@code ctts} and by the track's edit list. Keyframes are the
+ * samples listed in {@code stss}, or every sample if there is no such box.
+ *
+ * Lookups are binary searches over sorted arrays, so stepping and snapping cost O(log n) in the number of frames.
+ */
+public class Mp4FrameIndex {
+    // how far a time may be from a frame's and still count as that frame; media players round to about a millisecond
+    private static final double TOLERANCE = 1e-4;
+    private static final int HEADER_SIZE = 8;
+    // the most elements a Java array can hold
+    private static final long MAX_SAMPLES = Integer.MAX_VALUE - 8;
+
+    private final double[] frames;
+    private final double[] keyframes;
+
+    private Mp4FrameIndex(double[] frames, double[] keyframes) {
+        this.frames = frames;
+        this.keyframes = keyframes;
+    }
+
+    /**
+     * Read the index of the first video track.
+     *
+     * @throws IOException if the file can't be read, has no video track with sample tables or its tables are corrupt
+     */
+    public static Mp4FrameIndex read(File file) throws IOException {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel()) {
+            ByteBuffer moov = readTopLevelBox(channel, "moov");
+            if(moov == null) {
+                throw new IOException(file.getName() + " has no moov box");
+            }
+            ByteBuffer mvhd = findChild(moov, "mvhd");
+            long movieTimescale = mvhd == null ? 0 : readTimescale(mvhd);
+            for(ByteBuffer trak = findChild(moov, "trak"); trak != null; trak = findNext(moov, trak, "trak")) {
+                Mp4FrameIndex index = readTrack(trak, movieTimescale, channel.size());
+                if(index != null) {
+                    return index;
+                }
+            }
+            throw new IOException(file.getName() + " has no video track");
+        }
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    public int getKeyframeCount() {
+        return keyframes.length;
+    }
+
+    public double getFrameTime(int frame) {
+        return frames[frame];
+    }
+
+    /**
+     * Index of the frame showing at {@code seconds}, or -1 before the first frame.
+     */
+    public int frameAt(double seconds) {
+        return floor(frames, seconds + TOLERANCE);
+    }
+
+    /**
+     * Start of the frame after the one showing at {@code seconds}, or of the last frame.
+     */
+    public double nextFrame(double seconds) {
+        return after(frames, seconds);
+    }
+
+    /**
+     * Start of the frame before the one starting at or just before {@code seconds}, or of the first frame.
+     */
+    public double previousFrame(double seconds) {
+        return before(frames, seconds);
+    }
+
+    public double nextKeyframe(double seconds) {
+        return after(keyframes, seconds);
+    }
+
+    public double previousKeyframe(double seconds) {
+        return before(keyframes, seconds);
+    }
+
+    /**
+     * The frame boundary closest to {@code seconds}.
+     */
+    public double snap(double seconds) {
+        if(frames.length == 0) {
+            return seconds;
+        }
+        int floor = floor(frames, seconds);
+        if(floor < 0) {
+            return frames[0];
+        }
+        if(floor + 1 < frames.length && frames[floor + 1] - seconds < seconds - frames[floor]) {
+            return frames[floor + 1];
+        }
+        return frames[floor];
+    }
+
+    private static double after(double[] times, double seconds) {
+        if(times.length == 0) {
+            return seconds;
+        }
+        int next = floor(times, seconds + TOLERANCE) + 1;
+        return times[Math.min(next, times.length - 1)];
+    }
+
+    private static double before(double[] times, double seconds) {
+        if(times.length == 0) {
+            return seconds;
+        }
+        int previous = floor(times, seconds - TOLERANCE);
+        return times[Math.max(previous, 0)];
+    }
+
+    /**
+     * Index of the last time at or before {@code seconds}, or -1.
+     */
+    private static int floor(double[] times, double seconds) {
+        int low = 0;
+        int high = times.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(times[middle] <= seconds) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * @return null if the track isn't video
+     */
+    private static Mp4FrameIndex readTrack(ByteBuffer trak, long movieTimescale, long fileSize) throws IOException {
+        ByteBuffer mdia = findChild(trak, "mdia");
+        ByteBuffer hdlr = mdia == null ? null : findChild(mdia, "hdlr");
+        if(hdlr == null || hdlr.remaining() < 12 || !"vide".equals(fourCc(hdlr, hdlr.position() + 8))) {
+            return null;
+        }
+        ByteBuffer mdhd = findChild(mdia, "mdhd");
+        ByteBuffer minf = findChild(mdia, "minf");
+        ByteBuffer stbl = minf == null ? null : findChild(minf, "stbl");
+        ByteBuffer stts = stbl == null ? null : findChild(stbl, "stts");
+        if(mdhd == null || stts == null) {
+            throw new IOException("Video track without sample tables");
+        }
+        long timescale = readTimescale(mdhd);
+        if(timescale <= 0) {
+            throw new IOException("Video track without a timescale");
+        }
+
+        // decoding times, then presentation times
+        int entries = readEntryCount(stts, "stts", 8);
+        long total = 0;
+        for(int i = 0; i < entries; i++) {
+            total += stts.getInt(stts.position() + 8 + i * 8) & 0xffffffffL;
+        }
+        // every sample takes at least a byte of the file, so more than that is a corrupt table, not a long video
+        if(total > Math.min(fileSize, MAX_SAMPLES)) {
+            throw new IOException("stts box lists " + total + " samples");
+        }
+        int samples = (int) total;
+        long[] times = new long[samples];
+        long time = 0;
+        int sample = 0;
+        for(int i = 0; i < entries; i++) {
+            long count = stts.getInt(stts.position() + 8 + i * 8) & 0xffffffffL;
+            long delta = stts.getInt(stts.position() + 12 + i * 8) & 0xffffffffL;
+            for(long j = 0; j < count; j++) {
+                times[sample++] = time;
+                time += delta;
+            }
+        }
+        ByteBuffer ctts = findChild(stbl, "ctts");
+        if(ctts != null) {
+            int offsetEntries = readEntryCount(ctts, "ctts", 8);
+            sample = 0;
+            for(int i = 0; i < offsetEntries && sample < samples; i++) {
+                int count = ctts.getInt(ctts.position() + 8 + i * 8);
+                int offset = ctts.getInt(ctts.position() + 12 + i * 8);
+                for(int j = 0; j < count && sample < samples; j++) {
+                    times[sample++] += offset;
+                }
+            }
+        }
+
+        // the edit list says which media time is shown first and how long after the start of the movie
+        long mediaStart = 0;
+        double delay = 0;
+        ByteBuffer edts = findChild(trak, "edts");
+        ByteBuffer elst = edts == null ? null : findChild(edts, "elst");
+        if(elst != null) {
+            int version = elst.remaining() > 0 ? elst.get(elst.position()) : 0;
+            int editEntries = readEntryCount(elst, "elst", version == 1 ? 20 : 12);
+            int position = elst.position() + 8;
+            for(int i = 0; i < editEntries; i++) {
+                long duration = version == 1 ? elst.getLong(position) : elst.getInt(position) & 0xffffffffL;
+                long start = version == 1 ? elst.getLong(position + 8) : elst.getInt(position + 4);
+                position += version == 1 ? 20 : 12;
+                if(start == -1) {
+                    delay += movieTimescale > 0 ? (double) duration / movieTimescale : 0;
+                } else {
+                    mediaStart = start;
+                    break;
+                }
+            }
+        }
+
+        double[] frames = new double[samples];
+        for(int i = 0; i < samples; i++) {
+            frames[i] = (double) (times[i] - mediaStart) / timescale + delay;
+        }
+        ByteBuffer stss = findChild(stbl, "stss");
+        double[] keyframes;
+        if(stss == null) {
+            keyframes = frames.clone();
+        } else {
+            int syncEntries = readEntryCount(stss, "stss", 4);
+            keyframes = new double[syncEntries];
+            int count = 0;
+            for(int i = 0; i < syncEntries; i++) {
+                int number = stss.getInt(stss.position() + 8 + i * 4);
+                if(number >= 1 && number <= samples) {
+                    keyframes[count++] = frames[number - 1];
+                }
+            }
+            keyframes = Arrays.copyOf(keyframes, count);
+        }
+        Arrays.sort(frames);
+        Arrays.sort(keyframes);
+        return new Mp4FrameIndex(frames, keyframes);
+    }
+
+    /**
+     * Number of entries in the table of a full box, which follows its version, flags and entry count.
+     *
+     * @throws IOException if the table doesn't fit in the box
+     */
+    private static int readEntryCount(ByteBuffer box, String type, int entrySize) throws IOException {
+        if(box.remaining() < 8) {
+            throw new IOException(type + " box too short");
+        }
+        long entries = box.getInt(box.position() + 4) & 0xffffffffL;
+        if(entries * entrySize > box.remaining() - 8) {
+            throw new IOException(type + " box has room for fewer than its " + entries + " entries");
+        }
+        return (int) entries;
+    }
+
+    /**
+     * Timescale of an {@code mvhd} or {@code mdhd} box, which share the layout up to it.
+     */
+    private static long readTimescale(ByteBuffer box) throws IOException {
+        int offset = box.remaining() > 0 && box.get(box.position()) == 1 ? 20 : 12;
+        if(box.remaining() < offset + 4) {
+            throw new IOException("Media header box too short");
+        }
+        return box.getInt(box.position() + offset) & 0xffffffffL;
+    }
+
+    /**
+     * Read the body of the first top-level box of the given type, skipping the others without reading them, which
+     * matters for the {@code mdat} box that holds the video itself.
+     */
+    private static ByteBuffer readTopLevelBox(FileChannel channel, String type) throws IOException {
+        long position = 0;
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        while(position + HEADER_SIZE <= fileSize) {
+            header.clear().limit(HEADER_SIZE);
+            readFully(channel, header, position);
+            long size = header.getInt(0) & 0xffffffffL;
+            String boxType = fourCc(header, 4);
+            int headerSize = HEADER_SIZE;
+            if(size == 1) {
+                header.limit(16);
+                readFully(channel, header, position);
+                size = header.getLong(8);
+                headerSize = 16;
+            } else if(size == 0) {
+                size = fileSize - position;
+            }
+            if(size < headerSize) {
+                throw new IOException("Corrupt box at offset " + position);
+            }
+            if(boxType.equals(type)) {
+                if(size - headerSize > Integer.MAX_VALUE) {
+                    throw new IOException(type + " box too large");
+                }
+                ByteBuffer body = ByteBuffer.allocate((int) (size - headerSize));
+                readFully(channel, body, position + headerSize);
+                body.flip();
+                return body;
+            }
+            position += size;
+        }
+        return null;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    /**
+     * The body of the first child box of {@code parent} with the given type, as a buffer whose position and limit
+     * frame the body.
+     */
+    private static ByteBuffer findChild(ByteBuffer parent, String type) {
+        return find(parent, parent.position(), type);
+    }
+
+    /**
+     * The next sibling of {@code previous}, a child of {@code parent}, with the given type.
+     */
+    private static ByteBuffer findNext(ByteBuffer parent, ByteBuffer previous, String type) {
+        return find(parent, previous.limit(), type);
+    }
+
+    private static ByteBuffer find(ByteBuffer parent, int from, String type) {
+        int position = from;
+        while(position + HEADER_SIZE <= parent.limit()) {
+            long size = parent.getInt(position) & 0xffffffffL;
+            int headerSize = HEADER_SIZE;
+            if(size == 1) {
+                if(position + 16 > parent.limit()) {
+                    return null;
+                }
+                size = parent.getLong(position + 8);
+                headerSize = 16;
+            } else if(size == 0) {
+                size = parent.limit() - position;
+            }
+            if(size < headerSize || size > parent.limit() - position) {
+                return null;
+            }
+            if(fourCc(parent, position + 4).equals(type)) {
+                ByteBuffer body = parent.duplicate();
+                body.limit((int) (position + size)).position(position + headerSize);
+                return body;
+            }
+            position += size;
+        }
+        return null;
+    }
+
+    private static String fourCc(ByteBuffer buffer, int position) {
+        byte[] bytes = new byte[4];
+        for(int i = 0; i < 4; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,75 @@
+package model;
+
+/**
+ * Column that new samples are appended to and old ones dropped from the front of, without moving the rest. Index 0 is
+ * the oldest sample still kept. The ring grows when it is full, so how much is kept is up to the caller.
+ */
+public class RingFloatColumn implements SampleColumn {
+    private float[] data;
+    private int head = 0;
+    private int size = 0;
+
+    public RingFloatColumn() {
+        this(1024);
+    }
+
+    public RingFloatColumn(int capacity) {
+        data = new float[Math.max(1, capacity)];
+    }
+
+    public void add(float value) {
+        if(size == data.length) {
+            grow();
+        }
+        int index = head + size;
+        if(index >= data.length) {
+            index -= data.length;
+        }
+        data[index] = value;
+        size++;
+    }
+
+    /**
+     * Drop the {@code count} oldest samples.
+     */
+    public void removeOldest(int count) {
+        if(count < 0 || count > size) {
+            throw new IndexOutOfBoundsException("Can't remove " + count + " of " + size + " samples");
+        }
+        head += count;
+        if(head >= data.length) {
+            head -= data.length;
+        }
+        size -= count;
+    }
+
+    @Override
+    public float get(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        index += head;
+        if(index >= data.length) {
+            index -= data.length;
+        }
+        return data[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    private void grow() {
+        float[] grown = new float[data.length * 2];
+        int firstPart = Math.min(size, data.length - head);
+        System.arraycopy(data, head, grown, 0, firstPart);
+        System.arraycopy(data, 0, grown, firstPart, size - firstPart);
+        data = grown;
+        head = 0;
+    }
+}
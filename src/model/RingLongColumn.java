@@ -0,0 +1,149 @@
+package model;
+
+/**
+ * {@link RingFloatColumn} for exact ticks, so a stream's time column keeps every sample apart however large its
+ * values, such as seconds or milliseconds since the epoch. Ticks with more decimals than those before them rescale
+ * the ticks kept, as in {@link LongColumn}.
+ */
+public class RingLongColumn implements ExactColumn {
+    private long[] ticks;
+    private int head = 0;
+    private int size = 0;
+    private int decimals = 0;
+    private double divisor = 1;
+    // largest magnitude added, to tell whether rescaling would overflow without looking at every tick
+    private long maxMagnitude = 0;
+
+    public RingLongColumn() {
+        this(1024);
+    }
+
+    public RingLongColumn(int capacity) {
+        ticks = new long[Math.max(1, capacity)];
+    }
+
+    /**
+     * Add a tick of 10<sup>-decimals</sup>.
+     *
+     * @return false, adding nothing, if it can't be stored exactly along with the ticks already kept
+     */
+    public boolean add(long tick, int decimals) {
+        if(size == 0) {
+            setDecimals(decimals);
+            maxMagnitude = 0;
+        } else if(decimals > this.decimals) {
+            if(!rescale(decimals)) {
+                return false;
+            }
+        } else if(decimals < this.decimals) {
+            long factor = DeltaColumn.POWERS_OF_TEN[this.decimals - decimals];
+            if(Math.abs(tick) > Long.MAX_VALUE / factor) {
+                return false;
+            }
+            tick *= factor;
+        }
+        addTick(tick);
+        return true;
+    }
+
+    /**
+     * Add a value that wasn't written as a plain decimal, rounded to the ticks already kept.
+     */
+    public void add(double value) {
+        addTick(Math.round(value * divisor));
+    }
+
+    private void addTick(long tick) {
+        if(size == ticks.length) {
+            grow();
+        }
+        int index = head + size;
+        if(index >= ticks.length) {
+            index -= ticks.length;
+        }
+        ticks[index] = tick;
+        size++;
+        maxMagnitude = Math.max(maxMagnitude, Math.abs(tick));
+    }
+
+    private boolean rescale(int decimals) {
+        long factor = DeltaColumn.POWERS_OF_TEN[decimals - this.decimals];
+        if(maxMagnitude > Long.MAX_VALUE / factor) {
+            return false;
+        }
+        for(int i = 0; i < size; i++) {
+            int index = head + i;
+            if(index >= ticks.length) {
+                index -= ticks.length;
+            }
+            ticks[index] *= factor;
+        }
+        maxMagnitude *= factor;
+        setDecimals(decimals);
+        return true;
+    }
+
+    private void setDecimals(int decimals) {
+        this.decimals = decimals;
+        divisor = DeltaColumn.POWERS_OF_TEN[decimals];
+    }
+
+    /**
+     * Drop the {@code count} oldest samples.
+     */
+    public void removeOldest(int count) {
+        if(count < 0 || count > size) {
+            throw new IndexOutOfBoundsException("Can't remove " + count + " of " + size + " samples");
+        }
+        head += count;
+        if(head >= ticks.length) {
+            head -= ticks.length;
+        }
+        size -= count;
+    }
+
+    @Override
+    public int getDecimals() {
+        return decimals;
+    }
+
+    @Override
+    public long getTick(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        index += head;
+        if(index >= ticks.length) {
+            index -= ticks.length;
+        }
+        return ticks[index];
+    }
+
+    @Override
+    public float get(int index) {
+        return (float) getDouble(index);
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return getTick(index) / divisor;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ticks.length;
+    }
+
+    private void grow() {
+        long[] grown = new long[ticks.length * 2];
+        int firstPart = Math.min(size, ticks.length - head);
+        System.arraycopy(ticks, head, grown, 0, firstPart);
+        System.arraycopy(ticks, 0, grown, firstPart, size - firstPart);
+        ticks = grown;
+        head = 0;
+    }
+}
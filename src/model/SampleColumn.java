@@ -0,0 +1,28 @@
+package model;
+
+/**
+ * Read access to the samples of one waveform column, wherever they are stored.
+ */
+public interface SampleColumn {
+    int size();
+
+    float get(int index);
+
+    /**
+     * The sample with whatever precision it is stored at. Time columns are read this way, since a float can't tell
+     * apart the samples of a long recording or of epoch timestamps.
+     */
+    default double getDouble(int index) {
+        return get(index);
+    }
+
+    /**
+     * Copy the samples in [from, to) into {@code out} from {@code offset} on. Scans that read a range in order use
+     * this so compressed columns can decode it in one sequential pass.
+     */
+    default void read(int from, int to, float[] out, int offset) {
+        for(int i = from; i < to; i++) {
+            out[offset + i - from] = get(i);
+        }
+    }
+}
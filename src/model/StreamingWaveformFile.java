@@ -0,0 +1,119 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A waveform file whose rows keep arriving from a {@link CsvTailer} while it is open. Rows are appended to ring
+ * buffers, and rows older than the retention window behind the newest one are dropped, so a recording that runs for
+ * hours holds a fixed amount of memory. The time column the stream is opened with is kept as exact ticks, so epoch
+ * times stay apart and the retention window is measured on the real times; the other columns are floats.
+ *
+ * Samples only change in {@link #update()}, which the owner calls on the thread that reads them (the FX thread in the
+ * application), so readers never see a column half appended.
+ */
+public class StreamingWaveformFile extends WaveformFile implements Closeable {
+    public static final double DEFAULT_RETENTION_SECONDS = Double.parseDouble(
+            System.getProperty("labelme.streamRetentionSeconds", "600"));
+    public static final long HEADER_TIMEOUT_SECONDS = 30;
+
+    private final CsvTailer tailer;
+    private final SampleColumn[] columns;
+    private final double retentionSeconds;
+
+    private StreamingWaveformFile(CsvTailer tailer, String timeColumn, String[] headers, SampleColumn[] columns,
+                                  double retentionSeconds) {
+        super(tailer.getName(), timeColumn, headers, columns);
+        this.tailer = tailer;
+        this.columns = columns;
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    /**
+     * Wait for the header and start with whatever rows have arrived so far.
+     *
+     * @param timeColumn the time column, or the first column if there is no such column
+     * @param retentionSeconds how much of the stream to keep, in seconds of the time column
+     */
+    public static StreamingWaveformFile open(CsvTailer tailer, String timeColumn, double retentionSeconds)
+            throws IOException, InterruptedException {
+        String[] headers = tailer.awaitHeaders(HEADER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if(!Arrays.asList(headers).contains(timeColumn)) {
+            // retention needs some time column from the start; the user picks the real one once it is open
+            timeColumn = headers[0];
+        }
+        SampleColumn[] columns = new SampleColumn[headers.length];
+        for(int i = 0; i < columns.length; i++) {
+            columns[i] = headers[i].equals(timeColumn) ? new RingLongColumn() : new RingFloatColumn();
+        }
+        StreamingWaveformFile file = new StreamingWaveformFile(tailer, timeColumn, headers, columns,
+                retentionSeconds);
+        file.update();
+        return file;
+    }
+
+    /**
+     * Append the rows parsed since the last call and drop those that fell out of the retention window.
+     *
+     * @return whether any samples changed
+     */
+    public boolean update() {
+        SampleColumn[] pending = tailer.takePending();
+        if(pending == null) {
+            return false;
+        }
+        for(int column = 0; column < columns.length; column++) {
+            SampleColumn rows = pending[column];
+            if(columns[column] instanceof RingLongColumn) {
+                append((RingLongColumn) columns[column], rows);
+            } else {
+                RingFloatColumn ring = (RingFloatColumn) columns[column];
+                for(int i = 0; i < rows.size(); i++) {
+                    ring.add(rows.get(i));
+                }
+            }
+        }
+
+        SampleColumn time = getTimeColumn();
+        int size = time.size();
+        int expired = 0;
+        if(retentionSeconds > 0 && size > 0) {
+            expired = TimeIndex.lowerBound(time, size, time.getDouble(size - 1) - retentionSeconds);
+            if(expired > 0) {
+                for(SampleColumn column : columns) {
+                    if(column instanceof RingLongColumn) {
+                        ((RingLongColumn) column).removeOldest(expired);
+                    } else {
+                        ((RingFloatColumn) column).removeOldest(expired);
+                    }
+                }
+            }
+        }
+        columnsChanged(expired);
+        return true;
+    }
+
+    /**
+     * Append a batch to an exact ring, rounding any value that isn't exact, or doesn't fit with the ticks kept, to
+     * the ticks it has.
+     */
+    private static void append(RingLongColumn ring, SampleColumn rows) {
+        ExactColumn exact = rows instanceof ExactColumn ? (ExactColumn) rows : null;
+        for(int i = 0; i < rows.size(); i++) {
+            if(exact == null || !ring.add(exact.getTick(i), exact.getDecimals())) {
+                ring.add(rows.getDouble(i));
+            }
+        }
+    }
+
+    public CsvTailer getTailer() {
+        return tailer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        tailer.close();
+    }
+}
@@ -0,0 +1,192 @@
+package model;
+
+/**
+ * Maps a time to the sample at or before it in a sorted time column. Columns sampled at a constant rate, the common
+ * case for logger output, are detected once when the index is built and then answered by arithmetic with at most a
+ * step or two of correction; anything else falls back to a binary search.
+ */
+public class TimeIndex {
+    // how far a sample may stray from the uniform grid, as a fraction of the step, before the column counts as
+    // irregular; loggers jitter a little and times may be stored as floats
+    private static final double UNIFORM_TOLERANCE = 0.01;
+
+    private final SampleColumn time;
+    private final int size;
+    private final boolean uniform;
+    private final double first;
+    // the grid a uniform column is checked against: sample i is expected at origin + i * step
+    private final double origin;
+    private final double step;
+    private final double tolerance;
+    // samples appended since the whole column was last checked
+    private final int unchecked;
+
+    public TimeIndex(SampleColumn time) {
+        this.time = time;
+        this.size = time.size();
+        this.first = size > 0 ? time.getDouble(0) : Double.NaN;
+        this.origin = first;
+        this.step = size > 1 ? (time.getDouble(size - 1) - first) / (size - 1) : Double.NaN;
+        this.tolerance = step > 0 ? tolerance(first, time.getDouble(size - 1), step) : Double.NaN;
+        this.uniform = step > 0 && fitsGrid(0);
+        this.unchecked = 0;
+    }
+
+    private TimeIndex(SampleColumn time, double origin, double step, double tolerance, boolean uniform,
+                      int unchecked) {
+        this.time = time;
+        this.size = time.size();
+        this.first = time.getDouble(0);
+        this.origin = origin;
+        this.step = step;
+        this.tolerance = tolerance;
+        this.uniform = uniform;
+        this.unchecked = unchecked;
+    }
+
+    /**
+     * The index of the same column after {@code removed} samples were dropped from its front and others appended,
+     * as a stream does. A uniform column only has its new samples checked against the grid it already had. The
+     * whole column is checked again when they are off the grid, and an irregular one once as many samples as it
+     * holds have been appended since it was last checked, so each sample is checked a bounded number of times.
+     */
+    public TimeIndex update(int removed) {
+        int kept = size - removed;
+        int appended = time.size() - Math.max(kept, 0);
+        if(kept < 2 || time.size() < 2) {
+            return new TimeIndex(time);
+        }
+        if(!uniform) {
+            return unchecked + appended >= time.size() ? new TimeIndex(time)
+                    : new TimeIndex(time, Double.NaN, Double.NaN, Double.NaN, false, unchecked + appended);
+        }
+        TimeIndex updated = new TimeIndex(time, origin + removed * step, step, tolerance, true, 0);
+        return updated.fitsGrid(kept) ? updated : new TimeIndex(time);
+    }
+
+    private static double tolerance(double first, double last, double step) {
+        double magnitude = Math.max(Math.abs(first), Math.abs(last));
+        // times that are all floats were probably rounded to floats; exact ones only to doubles
+        boolean floats = (float) first == first && (float) last == last;
+        return Math.max(step * UNIFORM_TOLERANCE, floats ? Math.ulp((float) magnitude) : Math.ulp(magnitude));
+    }
+
+    /**
+     * Whether the samples from {@code from} on are all within the tolerance of the grid.
+     */
+    private boolean fitsGrid(int from) {
+        for(int i = from; i < size; i++) {
+            if(!(Math.abs(time.getDouble(i) - (origin + i * step)) <= tolerance)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isUniform() {
+        return uniform;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Index of the last sample at or before {@code fileTime}, or -1 if it is before the first sample.
+     */
+    public int floor(double fileTime) {
+        if(size == 0 || !(fileTime >= first)) {
+            return -1;
+        }
+        if(!uniform) {
+            return upperBound(time, size, fileTime) - 1;
+        }
+        double guess = Math.floor((fileTime - origin) / step);
+        int index = guess >= size ? size - 1 : (int) guess;
+        // the grid is only nearly exact, so settle on the neighbouring sample where it is off
+        while(index > 0 && time.getDouble(index) > fileTime) {
+            index--;
+        }
+        while(index + 1 < size && time.getDouble(index + 1) <= fileTime) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Index of the first sample at or after {@code fileTime}, or {@link #size()} if it is after the last sample.
+     */
+    public int ceiling(double fileTime) {
+        int index = floor(fileTime);
+        if(index >= 0 && time.getDouble(index) == fileTime) {
+            return index;
+        }
+        return index + 1;
+    }
+
+    /**
+     * Value of {@code values} at {@code fileTime}, linearly interpolated between the samples either side of it if
+     * {@code interpolate} is set, otherwise the sample at or before it. NaN outside the recording.
+     */
+    public double valueAt(SampleColumn values, double fileTime, boolean interpolate) {
+        return valueAt(values, fileTime, floor(fileTime), interpolate);
+    }
+
+    /**
+     * Same as {@link #valueAt(SampleColumn, double, boolean)} with the result of {@link #floor} already known, so
+     * several columns can share one lookup.
+     */
+    public double valueAt(SampleColumn values, double fileTime, int index, boolean interpolate) {
+        if(index < 0 || index >= values.size()) {
+            return Double.NaN;
+        }
+        double before = time.getDouble(index);
+        if(fileTime == before) {
+            return values.get(index);
+        }
+        if(index + 1 >= size || index + 1 >= values.size()) {
+            // past the last sample
+            return Double.NaN;
+        }
+        if(!interpolate) {
+            return values.get(index);
+        }
+        double after = time.getDouble(index + 1);
+        double fraction = (fileTime - before) / (after - before);
+        return values.get(index) + (values.get(index + 1) - values.get(index)) * fraction;
+    }
+
+    /**
+     * Index of the first sample at or after {@code target}, assuming the time column is sorted.
+     */
+    static int lowerBound(SampleColumn time, int size, double target) {
+        int low = 0;
+        int high = size;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(time.getDouble(middle) < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index of the first sample after {@code target}, assuming the time column is sorted.
+     */
+    static int upperBound(SampleColumn time, int size, double target) {
+        int low = 0;
+        int high = size;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(time.getDouble(middle) <= target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
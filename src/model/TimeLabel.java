@@ -0,0 +1,60 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A labeled time segment, in seconds of the shared (video) timeline. Every label has an id that is unique within the
+ * session and survives being saved and loaded again.
+ */
+public class TimeLabel {
+    private static final AtomicLong nextId = new AtomicLong(1);
+
+    private final long id;
+    private final double start;
+    private final double end;
+    private final String name;
+
+    public TimeLabel(double start, double end) {
+        this(start, end, "");
+    }
+
+    public TimeLabel(double start, double end, String name) {
+        this(nextId.getAndIncrement(), start, end, name);
+    }
+
+    /**
+     * Recreate a saved label. Labels created afterwards get larger ids.
+     */
+    public TimeLabel(long id, double start, double end, String name) {
+        nextId.accumulateAndGet(id + 1, Math::max);
+        this.id = id;
+        this.start = Math.min(start, end);
+        this.end = Math.max(start, end);
+        this.name = name == null ? "" : name;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public double getStart() {
+        return start;
+    }
+
+    public double getEnd() {
+        return end;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean overlaps(double from, double to) {
+        return start <= to && end >= from;
+    }
+
+    @Override
+    public String toString() {
+        return name + " [" + start + ", " + end + "]";
+    }
+}
@@ -0,0 +1,92 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The span of the shared timeline that the waveform views show. Views zoom and pan by changing it and follow it when
+ * it changes, so zooming or panning any of them moves all of them.
+ */
+public class TimeRange {
+    // time columns are exact to the microsecond or finer, but at epoch seconds a double only resolves about a quarter
+    // of a microsecond, so a narrower span couldn't be drawn smoothly
+    private static final double MIN_SPAN = 1e-5;
+    private static final double REVEAL_MARGIN = 0.05;
+
+    private double start = 0;
+    private double end = 1;
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    public double getStart() {
+        return start;
+    }
+
+    public double getEnd() {
+        return end;
+    }
+
+    public double getSpan() {
+        return end - start;
+    }
+
+    /**
+     * Show [start, end]. Listeners are only told if it differs from what is shown.
+     */
+    public void set(double start, double end) {
+        if(Double.isNaN(start) || Double.isNaN(end) || Double.isInfinite(start) || Double.isInfinite(end)) {
+            return;
+        }
+        if(end - start < MIN_SPAN) {
+            double middle = (start + end) / 2;
+            start = middle - MIN_SPAN / 2;
+            end = middle + MIN_SPAN / 2;
+        }
+        if(start == this.start && end == this.end) {
+            return;
+        }
+        this.start = start;
+        this.end = end;
+        Runnable[] current;
+        synchronized(listeners) {
+            current = listeners.toArray(new Runnable[0]);
+        }
+        for(Runnable listener : current) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Scale the span by {@code factor} around {@code anchor}, which stays where it is on screen. Factors below 1
+     * zoom in.
+     */
+    public void zoom(double anchor, double factor) {
+        set(anchor - (anchor - start) * factor, anchor + (end - anchor) * factor);
+    }
+
+    public void pan(double seconds) {
+        set(start + seconds, end + seconds);
+    }
+
+    /**
+     * Bring {@code time} into view if it is outside, keeping the span. It ends up a little in from the left edge, so a
+     * playback cursor running off the right edge turns the page instead of scrolling the views every frame.
+     */
+    public void reveal(double time) {
+        if(time < start || time > end) {
+            double span = end - start;
+            set(time - span * REVEAL_MARGIN, time + span * (1 - REVEAL_MARGIN));
+        }
+    }
+
+    public void addListener(Runnable listener) {
+        synchronized(listeners) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Runnable listener) {
+        synchronized(listeners) {
+            listeners.remove(listener);
+        }
+    }
+}
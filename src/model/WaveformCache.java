@@ -0,0 +1,520 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary columnar copy of a parsed CSV file, kept in a cache directory so the same recording can be reopened by
+ * memory mapping instead of parsing the text again.
+ *
+ * The file is little-endian: a header with the magic number, format version, the source file's size, modification
+ * time and a hash of its first and last {@value #HASHED_BYTES} bytes, then the column names and types. Samples follow
+ * as blocks of one {@link ChunkedColumn} chunk each, raw floats or, where every row of the chunk came from an
+ * {@link ExactColumn}, delta encoded ticks, and a directory of where each column's blocks start ends the file. A
+ * cache whose header doesn't match the source is ignored and rewritten.
+ *
+ * Blocks are written as rows arrive through a {@link Writer}, so a recording can be stored without ever being on the
+ * heap as a whole. Reading maps the file in segments of at most {@value #MAX_SEGMENT_SIZE} bytes.
+ */
+public class WaveformCache {
+    private static final int MAGIC = 0x43574d4c; // "LMWC"
+    private static final int VERSION = 3;
+    private static final byte TYPE_FLOAT = 0;
+    // states of a column's pending rows in a writer besides the decimals of its ticks
+    private static final int NO_ROWS = -2;
+    private static final int FLOATS = -1;
+    private static final int HASHED_BYTES = 1 << 16;
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+    private static final String EXTENSION = ".lmcache";
+
+    private final File source;
+    private final File cacheFile;
+    private final boolean temporary;
+    private String[] headers;
+    private SampleColumn[] columns;
+
+    public WaveformCache(File source) {
+        this(source, getDefaultDirectory());
+    }
+
+    public WaveformCache(File source, File directory) {
+        this(source, directory, false);
+    }
+
+    private WaveformCache(File source, File directory, boolean temporary) {
+        this.source = source;
+        this.cacheFile = new File(directory, cacheName(source));
+        this.temporary = temporary;
+    }
+
+    /**
+     * An entry in the temporary directory that is deleted once it has been written and mapped, for keeping a
+     * recording off the heap when caching is turned off.
+     */
+    public static WaveformCache temporary(File source) {
+        return new WaveformCache(source, new File(System.getProperty("java.io.tmpdir")), true);
+    }
+
+    /**
+     * Caching is on unless the {@code labelme.cache} system property is set to false.
+     */
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("labelme.cache"));
+    }
+
+    public static File getDefaultDirectory() {
+        return new File(System.getProperty("user.home"), ".labelme" + File.separator + "cache");
+    }
+
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    public String[] getHeaders() {
+        return headers;
+    }
+
+    public SampleColumn[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * Map the cached columns if there is a cache entry that matches the current source file.
+     *
+     * @return false if there is no usable cache entry
+     */
+    public boolean read() throws IOException {
+        if(!cacheFile.isFile()) {
+            return false;
+        }
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(cacheFile, "r");
+            FileChannel channel = randomAccessFile.getChannel()) {
+            ByteBuffer fixed = readFully(channel, 0, 16);
+            if(fixed == null || fixed.getInt() != MAGIC || fixed.getInt() != VERSION) {
+                return false;
+            }
+            int headerLength = fixed.getInt(12);
+            if(headerLength < 16 || headerLength > channel.size()) {
+                return false;
+            }
+            ByteBuffer header = readFully(channel, 0, headerLength);
+            if(header == null) {
+                return false;
+            }
+            header.position(16);
+            if(header.getLong() != source.length() || header.getLong() != source.lastModified()) {
+                return false;
+            }
+            byte[] hash = new byte[header.getInt()];
+            header.get(hash);
+            if(!Arrays.equals(hash, hashSource())) {
+                return false;
+            }
+
+            int numColumns = header.getInt();
+            int rows = header.getInt();
+            int chunkSize = header.getInt();
+            long directoryOffset = header.getLong();
+            String[] cachedHeaders = new String[numColumns];
+            for(int i = 0; i < numColumns; i++) {
+                byte[] name = new byte[header.getInt()];
+                header.get(name);
+                cachedHeaders[i] = new String(name, StandardCharsets.UTF_8);
+                if(header.get() != TYPE_FLOAT) {
+                    return false;
+                }
+            }
+            if(chunkSize != ChunkedColumn.CHUNK_SIZE) {
+                return false;
+            }
+
+            int chunks = (int) (((long) rows + chunkSize - 1) / chunkSize);
+            long directoryLength = (long) numColumns * chunks * Long.BYTES;
+            if(directoryOffset < headerLength || directoryOffset + directoryLength != channel.size()) {
+                return false;
+            }
+            ByteBuffer directory = readFully(channel, directoryOffset, (int) directoryLength);
+            if(directory == null) {
+                return false;
+            }
+            ByteBuffer[][] blocks = mapBlocks(channel, directory, numColumns, chunks, headerLength, directoryOffset);
+            SampleColumn[] cachedColumns = new SampleColumn[numColumns];
+            for(int i = 0; i < numColumns; i++) {
+                cachedColumns[i] = new ChunkedColumn(blocks[i], rows);
+            }
+            headers = cachedHeaders;
+            columns = cachedColumns;
+            return true;
+        }
+    }
+
+    /**
+     * Map the blocks, which lie back to back between the header and the directory, a few large segments at a time,
+     * and slice out each column's blocks in chunk order.
+     */
+    private static ByteBuffer[][] mapBlocks(FileChannel channel, ByteBuffer directory, int numColumns, int chunks,
+                                            long blocksStart, long blocksEnd) throws IOException {
+        long[] offsets = new long[numColumns * chunks];
+        for(int i = 0; i < offsets.length; i++) {
+            offsets[i] = directory.getLong(i * Long.BYTES);
+        }
+        long[] sorted = offsets.clone();
+        Arrays.sort(sorted);
+
+        ByteBuffer[][] blocks = new ByteBuffer[numColumns][chunks];
+        Map<Long, ByteBuffer> sliced = new HashMap<>();
+        int next = 0;
+        while(next < sorted.length) {
+            long segmentStart = sorted[next];
+            int last = next;
+            while(last + 1 < sorted.length
+                    && blockEnd(sorted, last + 1, blocksEnd) - segmentStart <= MAX_SEGMENT_SIZE) {
+                last++;
+            }
+            long segmentEnd = blockEnd(sorted, last, blocksEnd);
+            if(segmentStart < blocksStart || segmentEnd - segmentStart > MAX_SEGMENT_SIZE) {
+                throw new IOException("Corrupt block directory in " + channel);
+            }
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                    segmentEnd - segmentStart);
+            for(int i = next; i <= last; i++) {
+                ByteBuffer block = segment.duplicate();
+                block.position((int) (sorted[i] - segmentStart)).limit((int) (blockEnd(sorted, i, blocksEnd)
+                        - segmentStart));
+                sliced.put(sorted[i], block.slice());
+            }
+            next = last + 1;
+        }
+        for(int column = 0; column < numColumns; column++) {
+            for(int chunk = 0; chunk < chunks; chunk++) {
+                blocks[column][chunk] = sliced.get(offsets[column * chunks + chunk]);
+            }
+        }
+        return blocks;
+    }
+
+    private static long blockEnd(long[] sorted, int index, long blocksEnd) {
+        return index + 1 < sorted.length ? sorted[index + 1] : blocksEnd;
+    }
+
+    public Writer writer() {
+        return new Writer();
+    }
+
+    /**
+     * Write a cache entry for the source file from columns already in memory.
+     */
+    public void write(String[] headers, SampleColumn[] columns) throws IOException {
+        try(Writer writer = new Writer()) {
+            writer.start(headers);
+            writer.append(columns);
+            writer.finish();
+        }
+    }
+
+    /**
+     * Writes a cache entry block by block as rows arrive. The entry is written to a temporary file and moved into
+     * place by {@link #finish()} so a crash never leaves a truncated cache behind. Closing a writer that wasn't
+     * finished deletes what it wrote.
+     */
+    public class Writer implements CsvParser.RowSink, Closeable {
+        private String[] headers;
+        private File temporary;
+        private RandomAccessFile randomAccessFile;
+        private FileChannel channel;
+        private int headerLength;
+        private long position;
+        // each column's pending rows are either floats or, while they are all exact, ticks of pendingDecimals
+        private float[][] pending;
+        private long[][] pendingTicks;
+        private int[] pendingDecimals;
+        private int filled = 0;
+        private long rows = 0;
+        private long[][] offsets;
+        private int chunks = 0;
+
+        @Override
+        public void start(String[] headers) throws IOException {
+            File directory = cacheFile.getParentFile();
+            if(!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create cache directory " + directory);
+            }
+            this.headers = headers;
+            headerLength = encodeHeader(headers, hashSource(), 0, 0).capacity();
+            temporary = new File(directory, cacheFile.getName() + ".tmp");
+            randomAccessFile = new RandomAccessFile(temporary, "rw");
+            channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            // the header is written last, once the row count and directory offset are known
+            position = headerLength;
+            channel.position(position);
+            pending = new float[headers.length][];
+            pendingTicks = new long[headers.length][];
+            pendingDecimals = new int[headers.length];
+            Arrays.fill(pendingDecimals, NO_ROWS);
+            offsets = new long[headers.length][16];
+        }
+
+        /**
+         * Append the rows of {@code columns}, one column per header, to those written so far.
+         */
+        @Override
+        public void append(SampleColumn[] columns) throws IOException {
+            int count = columns.length == 0 ? 0 : columns[0].size();
+            int row = 0;
+            while(row < count) {
+                int take = Math.min(count - row, ChunkedColumn.CHUNK_SIZE - filled);
+                for(int column = 0; column < columns.length; column++) {
+                    appendRows(column, columns[column], row, take);
+                }
+                filled += take;
+                row += take;
+                if(filled == ChunkedColumn.CHUNK_SIZE) {
+                    writeChunk();
+                }
+            }
+        }
+
+        private void appendRows(int column, SampleColumn source, int from, int count) {
+            if(source instanceof ExactColumn && pendingDecimals[column] != FLOATS) {
+                ExactColumn exact = (ExactColumn) source;
+                int decimals = exact.getDecimals();
+                if(pendingDecimals[column] == NO_ROWS) {
+                    if(pendingTicks[column] == null) {
+                        pendingTicks[column] = new long[ChunkedColumn.CHUNK_SIZE];
+                        pending[column] = null;
+                    }
+                    pendingDecimals[column] = decimals;
+                } else if(decimals > pendingDecimals[column] && !rescalePending(column, decimals)) {
+                    pendingToFloats(column);
+                }
+                if(pendingDecimals[column] != FLOATS) {
+                    long[] target = pendingTicks[column];
+                    long factor = DeltaColumn.POWERS_OF_TEN[pendingDecimals[column] - decimals];
+                    for(int i = 0; i < count; i++) {
+                        long tick = exact.getTick(from + i);
+                        if(Math.abs(tick) > Long.MAX_VALUE / factor) {
+                            // too fine for the ticks already there; the rest of the chunk is stored as floats
+                            pendingToFloats(column, filled + i);
+                            appendFloats(column, source, from + i, count - i, filled + i);
+                            return;
+                        }
+                        target[filled + i] = tick * factor;
+                    }
+                    return;
+                }
+            }
+            if(pendingDecimals[column] != FLOATS) {
+                pendingToFloats(column);
+            }
+            appendFloats(column, source, from, count, filled);
+        }
+
+        private void appendFloats(int column, SampleColumn source, int from, int count, int at) {
+            float[] target = pending[column];
+            for(int i = 0; i < count; i++) {
+                target[at + i] = source.get(from + i);
+            }
+        }
+
+        private boolean rescalePending(int column, int decimals) {
+            long factor = DeltaColumn.POWERS_OF_TEN[decimals - pendingDecimals[column]];
+            long[] ticks = pendingTicks[column];
+            for(int i = 0; i < filled; i++) {
+                if(Math.abs(ticks[i]) > Long.MAX_VALUE / factor) {
+                    return false;
+                }
+            }
+            for(int i = 0; i < filled; i++) {
+                ticks[i] *= factor;
+            }
+            pendingDecimals[column] = decimals;
+            return true;
+        }
+
+        private void pendingToFloats(int column) {
+            pendingToFloats(column, filled);
+        }
+
+        /**
+         * Switch a column's pending rows to floats, converting the first {@code count} ticks.
+         */
+        private void pendingToFloats(int column, int count) {
+            if(pending[column] == null) {
+                pending[column] = new float[ChunkedColumn.CHUNK_SIZE];
+            }
+            if(pendingDecimals[column] >= 0) {
+                double divisor = DeltaColumn.POWERS_OF_TEN[pendingDecimals[column]];
+                long[] ticks = pendingTicks[column];
+                for(int i = 0; i < count; i++) {
+                    pending[column][i] = (float) (ticks[i] / divisor);
+                }
+            }
+            pendingDecimals[column] = FLOATS;
+        }
+
+        private void writeChunk() throws IOException {
+            if(chunks == offsets[0].length) {
+                for(int column = 0; column < offsets.length; column++) {
+                    offsets[column] = Arrays.copyOf(offsets[column], chunks * 2);
+                }
+            }
+            for(int column = 0; column < pending.length; column++) {
+                ByteBuffer block = pendingDecimals[column] >= 0
+                        ? ChunkedColumn.encode(pendingTicks[column], filled, pendingDecimals[column])
+                        : ChunkedColumn.encode(pending[column], filled);
+                offsets[column][chunks] = position;
+                position += block.remaining();
+                writeFully(channel, block);
+                pendingDecimals[column] = NO_ROWS;
+            }
+            chunks++;
+            rows += filled;
+            filled = 0;
+        }
+
+        /**
+         * Write the directory and header, move the entry into place and map it.
+         *
+         * @return the stored columns
+         */
+        @Override
+        public SampleColumn[] finish() throws IOException {
+            if(filled > 0 && pending.length > 0) {
+                writeChunk();
+            }
+            if(rows > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too many rows to cache: " + rows);
+            }
+            ByteBuffer directory = ByteBuffer.allocate(headers.length * chunks * Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for(long[] columnOffsets : offsets) {
+                for(int chunk = 0; chunk < chunks; chunk++) {
+                    directory.putLong(columnOffsets[chunk]);
+                }
+            }
+            directory.flip();
+            long directoryOffset = position;
+            writeFully(channel, directory);
+            ByteBuffer header = encodeHeader(headers, hashSource(), (int) rows, directoryOffset);
+            channel.position(0);
+            writeFully(channel, header);
+            channel.close();
+            randomAccessFile.close();
+            channel = null;
+            try {
+                Files.move(temporary.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temporary = null;
+            if(!read()) {
+                throw new IOException("Could not read back " + cacheFile);
+            }
+            // the mapping outlives the file where the platform allows deleting mapped files
+            if(WaveformCache.this.temporary && !cacheFile.delete()) {
+                cacheFile.deleteOnExit();
+            }
+            return columns;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(channel != null) {
+                channel.close();
+                randomAccessFile.close();
+                channel = null;
+            }
+            if(temporary != null) {
+                temporary.delete();
+                temporary = null;
+            }
+        }
+    }
+
+    private ByteBuffer encodeHeader(String[] headers, byte[] hash, int rows, long directoryOffset) {
+        byte[][] names = new byte[headers.length][];
+        int headerLength = 16 + 8 + 8 + 4 + hash.length + 4 + 4 + 4 + 8;
+        for(int i = 0; i < headers.length; i++) {
+            names[i] = headers[i].getBytes(StandardCharsets.UTF_8);
+            headerLength += 4 + names[i].length + 1;
+        }
+        headerLength = (headerLength + 7) & ~7;
+
+        ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(headerLength);
+        header.putLong(source.length()).putLong(source.lastModified());
+        header.putInt(hash.length).put(hash);
+        header.putInt(headers.length).putInt(rows).putInt(ChunkedColumn.CHUNK_SIZE).putLong(directoryOffset);
+        for(byte[] name : names) {
+            header.putInt(name.length).put(name).put(TYPE_FLOAT);
+        }
+        header.clear();
+        return header;
+    }
+
+    private byte[] hashSource() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(source, "r");
+            FileChannel channel = randomAccessFile.getChannel()) {
+            long size = channel.size();
+            int headLength = (int) Math.min(size, HASHED_BYTES);
+            digest.update(readFully(channel, 0, headLength));
+            int tailLength = (int) Math.min(size - headLength, HASHED_BYTES);
+            digest.update(readFully(channel, size - tailLength, tailLength));
+        }
+        return digest.digest();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String cacheName(File source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(source.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(source.getName()).append('-');
+            for(int i = 0; i < 8; i++) {
+                name.append(String.format("%02x", hash[i]));
+            }
+            return name.append(EXTENSION).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package model;
+
+/**
+ * One column of one open file. Views hold on to these rather than to the file's name and the column's header, which
+ * two files may share.
+ */
+public class WaveformColumn {
+    private final WaveformFile file;
+    private final String name;
+    private final int index;
+
+    WaveformColumn(WaveformFile file, String name, int index) {
+        this.file = file;
+        this.name = name;
+        this.index = index;
+    }
+
+    public WaveformFile getFile() {
+        return file;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Position of the column among the file's columns.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return file.getFilename() + ": " + name;
+    }
+}
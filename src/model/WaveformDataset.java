@@ -0,0 +1,58 @@
+package model;
+
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * Read-only JFreeChart view over one column of a {@link WaveformFile}, sharing the file's time column instead of
+ * copying samples into an XYSeries.
+ */
+public class WaveformDataset extends AbstractXYDataset {
+    private static final long serialVersionUID = 1L;
+
+    private final String key;
+    private final WaveformFile file;
+    private final SampleColumn time;
+    private final SampleColumn values;
+
+    public WaveformDataset(String key, WaveformFile file, SampleColumn values) {
+        this.key = key;
+        this.file = file;
+        this.time = file.getTimeColumn();
+        this.values = values;
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return 1;
+    }
+
+    @Override
+    public Comparable<String> getSeriesKey(int series) {
+        return key;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return Math.min(time.size(), values.size());
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return file.toSharedTime(time.getDouble(item));
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return values.get(item);
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return values.get(item);
+    }
+}
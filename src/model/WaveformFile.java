@@ -1,136 +1,382 @@
 package model;
 
-import javafx.scene.chart.Axis;
-import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
-import javafx.scene.effect.FloatMap;
-import javafx.scene.layout.FlowPane;
-import javafx.scene.layout.Pane;
 import org.jfree.data.xy.XYDataset;
-import org.jfree.data.xy.XYSeries;
-import view.MarkeredLineChart;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.security.InvalidKeyException;
 import java.text.ParseException;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by richard on 7/24/16.
  */
 public class WaveformFile {
+    private static final int LAZY_COLUMN_THRESHOLD = Integer.getInteger("labelme.lazyColumnThreshold", 64);
+    private static final long OFF_HEAP_THRESHOLD = Long.getLong("labelme.offHeapThresholdMB",
+            Runtime.getRuntime().maxMemory() / 8 / (1024 * 1024)) * 1024 * 1024;
+    private static final boolean COMPRESS_COLUMNS = Boolean.getBoolean("labelme.compressColumns");
+
     private String filename;
     private String timeColumn;
 
-    private Duration offsetTime;
-    private Duration previousOffsetTime;
-    private Map<String, XYSeries> waveforms;
-    private List<XYChart.Data<Float, Float>> labels;
+    // applied whenever samples are read rather than written into them, so changing it is O(1)
+    private volatile Duration offsetTime;
+    private final List<Runnable> offsetListeners = new ArrayList<>();
+    private final List<Runnable> dataListeners = new ArrayList<>();
+    private Map<String, SampleColumn> waveforms;
+    // read without the lock by views that must not wait for a pyramid being built
+    private Map<String, MinMaxPyramid> pyramids;
+    private volatile TimeIndex timeIndex;
+    private boolean cached = false;
 
     public WaveformFile(File file, String timeColumn) throws IOException, ParseException, NumberFormatException,
             IndexOutOfBoundsException {
-        filename = file.getName();
-        int numColumns = -1;
-        int lineNumber = 0;
+        this(new CsvParser(file), timeColumn);
+    }
+
+    /**
+     * Load the file behind a parser the caller keeps hold of, e.g. to follow its progress or cancel it.
+     */
+    public WaveformFile(CsvParser parser, String timeColumn) throws IOException, ParseException,
+            NumberFormatException, IndexOutOfBoundsException {
+        filename = parser.getFile().getName();
         this.timeColumn = timeColumn;
 
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        String line;
-        Map<Integer, String> indexToColumnHeader = new HashMap<>();
-        int timeColumnIndex = -1;
-        waveforms = new HashMap<>();
-
-        while ((line = br.readLine()) != null) {
-            String[] lineParts = line.split(",");
-            if(numColumns == -1) {
-                numColumns = lineParts.length;
-                for(int i = 0; i < lineParts.length; i++) {
-                    String columnHeader = lineParts[i];
-                    waveforms.put(columnHeader, new XYSeries(columnHeader));
-                    indexToColumnHeader.put(i, columnHeader);
-                    if(columnHeader.equals(timeColumn)) {
-                        timeColumnIndex = i;
-                    }
-                }
-            } else if(lineParts.length != numColumns) {
-                if(!(lineParts.length == 1 && lineParts[0].trim().length() == 0)) {
-                    throw new ParseException("Wrong number of columns on line " + lineNumber + " expected " + numColumns
-                            + " but found " + lineParts.length, lineNumber);
-                }
-            } else {
-                if(timeColumnIndex < 0 || timeColumnIndex >= lineParts.length) {
-                    throw new IndexOutOfBoundsException("Time column index " + timeColumnIndex + " is invalid");
-                }
-                float x = Float.parseFloat(lineParts[timeColumnIndex]);
-                for(int i = 0; i < numColumns; i++) {
-                    float y = Float.parseFloat(lineParts[i]);
-                    waveforms.get(indexToColumnHeader.get(i)).add(x, y);
-                }
+        String[] headers;
+        SampleColumn[] columns;
+        WaveformCache cache = WaveformCache.isEnabled() ? new WaveformCache(parser.getFile()) : null;
+        if(cache != null && readCache(cache)) {
+            headers = cache.getHeaders();
+            columns = cache.getColumns();
+            cached = true;
+        } else {
+            // wide files only parse the time column up front, the rest is decoded when first plotted
+            parser.setLazyColumns(LAZY_COLUMN_THRESHOLD, timeColumn);
+            parser.setExactColumns(timeColumn);
+            // so many more recordings fit in memory at once, for a little decoding on each read
+            parser.setCompressColumns(COMPRESS_COLUMNS);
+            // large files are written to the cache, or a temporary file, as they are parsed and read back from there
+            WaveformCache store = cache != null ? cache : WaveformCache.temporary(parser.getFile());
+            try(WaveformCache.Writer writer = store.writer()) {
+                parser.setRowSink(writer, OFF_HEAP_THRESHOLD);
+                parser.parse();
+            }
+            headers = parser.getHeaders();
+            columns = parser.getColumns();
+            if(cache != null && !parser.isLazy() && !parser.isSunk()) {
+                writeCache(cache, headers, columns);
             }
         }
+        setColumns(headers, columns);
+    }
+
+    /**
+     * For subclasses whose samples don't come from a parsed file, such as {@link StreamingWaveformFile}.
+     */
+    protected WaveformFile(String filename, String timeColumn, String[] headers, SampleColumn[] columns) {
+        this.filename = filename;
+        this.timeColumn = timeColumn;
+        setColumns(headers, columns);
+    }
+
+    private void setColumns(String[] headers, SampleColumn[] columns) {
+        int timeColumnIndex = Arrays.asList(headers).indexOf(timeColumn);
+        if(timeColumnIndex < 0 && columns.length > 0 && columns[0].size() > 0) {
+            throw new IndexOutOfBoundsException("Time column index " + timeColumnIndex + " is invalid");
+        }
+
+        waveforms = new LinkedHashMap<>();
+        for(int i = 0; i < headers.length; i++) {
+            waveforms.put(headers[i], columns[i]);
+        }
 
-        labels = new LinkedList<>();
+        pinColumn(timeColumn, true);
+        if(waveforms.containsKey(timeColumn)) {
+            timeIndex = new TimeIndex(getTimeColumn());
+        }
+        pyramids = new ConcurrentHashMap<>();
         offsetTime = Duration.ZERO;
-        previousOffsetTime = Duration.ZERO;
     }
 
-    public XYSeries getWaveform(String column, Pane rootPane) throws InvalidKeyException {
+    private static boolean readCache(WaveformCache cache) {
+        try {
+            return cache.read();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static void writeCache(WaveformCache cache, String[] headers, SampleColumn[] columns) {
+        try {
+            cache.write(headers, columns);
+        } catch (IOException e) {
+            // the cache only speeds up the next open, so a failure here must not fail this one
+            e.printStackTrace();
+        }
+    }
+
+    public XYDataset getWaveform(String column) throws InvalidKeyException {
         if(!waveforms.containsKey(column)) {
             throw new InvalidKeyException("No such column " + column);
         }
-        return waveforms.get(column);
+        return new WaveformDataset(column, this, getColumn(column));
     }
 
-    public void setOffsetTime(float seconds) {
-        if(offsetTime != null) {
-            previousOffsetTime = offsetTime;
-        } else {
-            previousOffsetTime = Duration.ZERO;
+    /**
+     * Same column as {@link #getWaveform} but resampled to the visible range, for charts of long recordings.
+     */
+    public DecimatedWaveformDataset getDecimatedWaveform(String column) throws InvalidKeyException {
+        return new DecimatedWaveformDataset(column, this, getPyramid(column));
+    }
+
+    /**
+     * The min/max pyramid of a column, built the first time it is asked for. A lazily decoded column is decoded first
+     * if it isn't already, so this can take as long as reading the column from the file and should be called off the
+     * FX thread.
+     *
+     * @throws NumberFormatException if the column is decoded now and has a cell that isn't a number
+     * @throws java.io.UncheckedIOException if the column is decoded now and the file can't be read
+     */
+    public synchronized MinMaxPyramid getPyramid(String column) throws InvalidKeyException {
+        if(!waveforms.containsKey(column)) {
+            throw new InvalidKeyException("No such column " + column);
+        }
+        SampleColumn values = getColumn(column);
+        if(values instanceof LazyCsvColumn) {
+            ((LazyCsvColumn) values).decode();
+        }
+        MinMaxPyramid pyramid = pyramids.get(column);
+        if(pyramid == null) {
+            pyramid = new MinMaxPyramid(values);
+            pyramids.put(column, pyramid);
+        }
+        return pyramid;
+    }
+
+    /**
+     * The pyramid of a column if it was built and its samples are decoded, so drawing from it reads nothing from the
+     * file, otherwise null; {@link #getPyramid} then makes it ready. Never waits for the pyramid to be built.
+     */
+    public MinMaxPyramid getReadyPyramid(String column) throws InvalidKeyException {
+        if(!waveforms.containsKey(column)) {
+            throw new InvalidKeyException("No such column " + column);
+        }
+        MinMaxPyramid pyramid = pyramids.get(column);
+        SampleColumn values = getColumn(column);
+        if(values instanceof LazyCsvColumn && !((LazyCsvColumn) values).isMaterialized()) {
+            return null;
         }
-        offsetTime = Duration.ZERO.plusMillis((int)(seconds*1000));
-        float deltaOffset = offsetTime.getSeconds() - previousOffsetTime.getSeconds();
+        return pyramid;
+    }
+
+    /**
+     * Whether reading a column reads nothing from the file, so it can be done on the FX thread.
+     */
+    public boolean isDecoded(String column) {
+        SampleColumn values = waveforms.get(column);
+        return !(values instanceof LazyCsvColumn) || ((LazyCsvColumn) values).isMaterialized();
+    }
+
+    /**
+     * Forget what was built or decoded for showing a column, its pyramid and, for a lazily decoded column, its
+     * samples, once nothing shows it any more. Both are built again if it is shown again.
+     */
+    public synchronized void releaseColumn(String column) {
+        pyramids.remove(column);
+        SampleColumn sampleColumn = waveforms.get(column);
+        if(sampleColumn instanceof LazyCsvColumn) {
+            ((LazyCsvColumn) sampleColumn).release();
+        }
+    }
+
+    /**
+     * Shift this file on the shared timeline. Nothing is rewritten; readers add {@link #getOffsetSeconds()} to the
+     * file's own time values, and are told to redraw through the offset listeners.
+     */
+    public void setOffsetTime(double seconds) {
+        offsetTime = Duration.ofNanos(Math.round(seconds * 1e9));
+        Runnable[] listeners;
+        synchronized(offsetListeners) {
+            listeners = offsetListeners.toArray(new Runnable[0]);
+        }
+        for(Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    public double getOffsetSeconds() {
+        Duration offset = offsetTime;
+        return offset.getSeconds() + offset.getNano() / 1e9;
+    }
+
+    /**
+     * Convert a time on the shared timeline (e.g. video time or a label boundary) to this file's time column.
+     */
+    public double toFileTime(double seconds) {
+        return seconds - getOffsetSeconds();
+    }
 
-        /*
-        for(MarkeredLineChart waveform : waveforms.values()) {
-            XYChart.Series series = waveform.getData().get(0); // each line chart should only have one series
-            for(int i = 0; i < series.getData().size(); i++) {
-                XYChart.Data point = (XYChart.Data) series.getData().get(i);
-                point.setXValue((Float) point.getXValue() + deltaOffset);
+    /**
+     * Convert a value of this file's time column to the shared timeline.
+     */
+    public double toSharedTime(double fileTime) {
+        return fileTime + getOffsetSeconds();
+    }
+
+    /**
+     * Listeners are told after samples are appended or dropped, on the thread that changed them. Only files whose
+     * samples change after loading, such as {@link StreamingWaveformFile}, ever call them.
+     */
+    public void addDataListener(Runnable listener) {
+        synchronized(dataListeners) {
+            dataListeners.add(listener);
+        }
+    }
+
+    public void removeDataListener(Runnable listener) {
+        synchronized(dataListeners) {
+            dataListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Bring everything derived from the samples up to date after {@code removed} rows were dropped from the front of
+     * every column and new ones appended, touching only the new rows, and tell the data listeners.
+     */
+    protected void columnsChanged(int removed) {
+        synchronized(this) {
+            for(MinMaxPyramid pyramid : pyramids.values()) {
+                pyramid.update(removed);
             }
         }
-        */
-        // TODO figure out implementation for labeling
+        TimeIndex index = timeIndex;
+        if(index != null) {
+            timeIndex = index.update(removed);
+        } else if(waveforms.containsKey(timeColumn)) {
+            timeIndex = new TimeIndex(getTimeColumn());
+        }
+        Runnable[] listeners;
+        synchronized(dataListeners) {
+            listeners = dataListeners.toArray(new Runnable[0]);
+        }
+        for(Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    public void addOffsetListener(Runnable listener) {
+        synchronized(offsetListeners) {
+            offsetListeners.add(listener);
+        }
+    }
+
+    public void removeOffsetListener(Runnable listener) {
+        synchronized(offsetListeners) {
+            offsetListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Index of the last sample at or before {@code seconds} on the shared timeline, or -1 if the recording starts
+     * after it. Constant time for uniformly sampled files, a binary search otherwise.
+     */
+    public int indexAt(double seconds) {
+        TimeIndex index = timeIndex;
+        return index == null ? -1 : index.floor(toFileTime(seconds));
+    }
+
+    /**
+     * Index of the first sample at or after {@code seconds} on the shared timeline, or the number of rows if the
+     * recording ends before it.
+     */
+    public int indexAtOrAfter(double seconds) {
+        TimeIndex index = timeIndex;
+        return index == null ? 0 : index.ceiling(toFileTime(seconds));
+    }
+
+    /**
+     * Value of a column at {@code seconds} on the shared timeline, linearly interpolated between the neighbouring
+     * samples. NaN outside the recording.
+     */
+    public double valueAt(String column, double seconds) throws InvalidKeyException {
+        return valueAt(column, seconds, true);
+    }
+
+    /**
+     * Value of a column at {@code seconds} on the shared timeline, either interpolated or the sample at or before it.
+     * NaN outside the recording.
+     */
+    public double valueAt(String column, double seconds, boolean interpolate) throws InvalidKeyException {
+        if(!waveforms.containsKey(column)) {
+            throw new InvalidKeyException("No such column " + column);
+        }
+        TimeIndex index = timeIndex;
+        return index == null ? Double.NaN : index.valueAt(getColumn(column), toFileTime(seconds), interpolate);
     }
 
-    public void addLabel(XYChart.Data<Float, Float> label) {
-        labels.add(label);
-        /*
-        for(MarkeredLineChart waveform : waveforms.values()) {
-            waveform.addVerticalRangeMarker(label);
-            waveform.layoutPlotChildren();
+    /**
+     * Values of several columns at the same time, looking the time up once. {@code values} must be at least as long
+     * as {@code columns}.
+     */
+    public void valuesAt(String[] columns, double seconds, boolean interpolate, double[] values)
+            throws InvalidKeyException {
+        for(String column : columns) {
+            if(!waveforms.containsKey(column)) {
+                throw new InvalidKeyException("No such column " + column);
+            }
+        }
+        TimeIndex index = timeIndex;
+        if(index == null) {
+            Arrays.fill(values, 0, columns.length, Double.NaN);
+            return;
+        }
+        double fileTime = toFileTime(seconds);
+        int sample = index.floor(fileTime);
+        for(int i = 0; i < columns.length; i++) {
+            values[i] = index.valueAt(getColumn(columns[i]), fileTime, sample, interpolate);
         }
-        */
-        // TODO figure out implementation for labeling
     }
 
+    /**
+     * Use another column as the time column. It keeps the precision it was loaded with, so a column of large times
+     * such as epoch milliseconds should be named as the time column when the file is loaded, which keeps it exact.
+     */
     public void setTimeColumn(String column) throws InvalidKeyException {
         if(!getColumnHeaders().contains(column)) {
             throw new InvalidKeyException(column + " is not an option for time column.");
         }
+        pinColumn(timeColumn, false);
         timeColumn = column;
-        // TODO update all waveforms
+        pinColumn(timeColumn, true);
+        timeIndex = new TimeIndex(getTimeColumn());
+    }
+
+    private void pinColumn(String column, boolean pinned) {
+        SampleColumn sampleColumn = waveforms.get(column);
+        if(sampleColumn instanceof LazyCsvColumn) {
+            ((LazyCsvColumn) sampleColumn).setPinned(pinned);
+        }
     }
 
-    public XYSeries getTimeColumn() {
+    public String getTimeColumnName() {
+        return timeColumn;
+    }
+
+    public SampleColumn getTimeColumn() {
         return getColumn(timeColumn);
     }
 
-    public XYSeries getColumn(String column) {
-        return waveforms.get(column);
+    public SampleColumn getColumn(String column) {
+        SampleColumn sampleColumn = waveforms.get(column);
+        if(sampleColumn instanceof LazyCsvColumn) {
+            ((LazyCsvColumn) sampleColumn).touch();
+        }
+        return sampleColumn;
     }
 
     public String getFilename() {
@@ -138,7 +384,50 @@ public class WaveformFile {
     }
 
     public String getFormattedOffsetTime() {
-        return String.valueOf(offsetTime.getSeconds());
+        Duration offset = offsetTime;
+        return BigDecimal.valueOf(offset.getSeconds()).add(BigDecimal.valueOf(offset.getNano(), 9))
+                .stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Whether the samples were mapped from the binary cache rather than parsed.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    public int getNumRows() {
+        SampleColumn time = getTimeColumn();
+        return time == null ? 0 : time.size();
+    }
+
+    /**
+     * Approximate heap held by this file's samples and pyramids. Memory mapped columns live outside the heap and
+     * lazily decoded columns and chunks only count while they are decoded.
+     */
+    public synchronized long getHeapBytes() {
+        long bytes = 0;
+        for(SampleColumn column : waveforms.values()) {
+            if(column instanceof FloatColumn) {
+                bytes += (long) ((FloatColumn) column).capacity() * Float.BYTES;
+            } else if(column instanceof ChunkedColumn) {
+                bytes += ((ChunkedColumn) column).getDecodedBytes();
+            } else if(column instanceof DeltaColumn) {
+                bytes += ((DeltaColumn) column).getHeapBytes();
+            } else if(column instanceof XorColumn) {
+                bytes += ((XorColumn) column).getHeapBytes();
+            } else if(column instanceof RingFloatColumn) {
+                bytes += (long) ((RingFloatColumn) column).capacity() * Float.BYTES;
+            } else if(column instanceof RingLongColumn) {
+                bytes += (long) ((RingLongColumn) column).capacity() * Long.BYTES;
+            } else if(column instanceof LazyCsvColumn && ((LazyCsvColumn) column).isMaterialized()) {
+                bytes += (long) column.size() * Float.BYTES;
+            }
+        }
+        for(MinMaxPyramid pyramid : pyramids.values()) {
+            bytes += pyramid.getHeapBytes();
+        }
+        return bytes;
     }
 
     public int getNumColumns() {
@@ -0,0 +1,424 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Float samples compressed in memory the way time series databases compress them, for columns the parser was asked
+ * to compress. Samples are cut into blocks of {@value #BLOCK_SIZE}, each headed by its minimum and maximum, and each
+ * block is stored whichever of these ways is smallest:
+ * <ul>
+ * <li>as decimals: samples that were written with a few decimals are stored as integers of that many decimals, each
+ * as its zigzag encoded difference from the previous one, bit packed at the width the largest difference needs;</li>
+ * <li>as XORs: each sample is the XOR of its bits with the previous sample's, one bit when they are equal and
+ * otherwise only the bits that changed, reusing the previous position of those bits when they fit in it;</li>
+ * <li>once, if all its samples are the same, or raw if nothing else makes it smaller.</li>
+ * </ul>
+ * Sensor channels logged with a few decimals take about a third to a half of their 32 bits, and ones that repeat or
+ * drift slowly only a few bits.
+ *
+ * Reading a sample decodes its whole block, which is kept for the next read, so scans that read in order decode each
+ * block once. {@link MinMaxPyramid} starts from the block headers, so only the blocks at the ends of a range are
+ * ever decoded, and not even those when their header shows they can't change the range's min and max.
+ */
+public class XorColumn implements SampleColumn {
+    static final int BLOCK_SHIFT = 8;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final byte BLOCK_XOR = 0;
+    private static final byte BLOCK_RAW = 1;
+    private static final byte BLOCK_CONSTANT = 2;
+    private static final byte BLOCK_DECIMAL = 3;
+    // most decimals a block is tried at; more than a float holds anyway
+    private static final int MAX_DECIMALS = 7;
+    private static final int DECIMAL_HEADER_BITS = 3 + 6 + Integer.SIZE;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7};
+    // samples are decoded by multiplying, which is quicker than dividing; encoding checks they come back the same
+    private static final double[] INVERSE_POWERS_OF_TEN = {1e0, 1e-1, 1e-2, 1e-3, 1e-4, 1e-5, 1e-6, 1e-7};
+
+    private final long[] words;
+    private final long[] blockStarts;
+    private final byte[] blockModes;
+    private final float[] blockMins;
+    private final float[] blockMaxs;
+    private final int size;
+    // the block read last; replaced rather than refilled so a reader on another thread never sees it change
+    private volatile DecodedBlock last;
+
+    private static class DecodedBlock {
+        final int block;
+        final float[] samples;
+
+        DecodedBlock(int block, float[] samples) {
+            this.block = block;
+            this.samples = samples;
+        }
+    }
+
+    private XorColumn(Builder builder) {
+        words = Arrays.copyOf(builder.words, (int) ((builder.bit + 63) >>> 6));
+        int blocks = (int) ((builder.size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT);
+        blockStarts = Arrays.copyOf(builder.blockStarts, blocks);
+        blockModes = Arrays.copyOf(builder.blockModes, blocks);
+        blockMins = Arrays.copyOf(builder.blockMins, blocks);
+        blockMaxs = Arrays.copyOf(builder.blockMaxs, blocks);
+        size = (int) builder.size;
+    }
+
+    /**
+     * Compresses samples added in order, a block at a time.
+     */
+    public static class Builder {
+        private final float[] pending = new float[BLOCK_SIZE];
+        private final long[] ticks = new long[BLOCK_SIZE];
+        private int filled = 0;
+        private long size = 0;
+        private long[] words = new long[64];
+        private long bit = 0;
+        private long[] blockStarts = new long[16];
+        private byte[] blockModes = new byte[16];
+        private float[] blockMins = new float[16];
+        private float[] blockMaxs = new float[16];
+        private int blocks = 0;
+
+        public void add(float value) {
+            pending[filled++] = value;
+            if(filled == BLOCK_SIZE) {
+                flush();
+            }
+        }
+
+        public void addAll(SampleColumn column) {
+            for(int i = 0; i < column.size(); i++) {
+                add(column.get(i));
+            }
+        }
+
+        public XorColumn build() {
+            if(filled > 0) {
+                flush();
+            }
+            if(size > Integer.MAX_VALUE - 8) {
+                throw new OutOfMemoryError("Column is too large");
+            }
+            return new XorColumn(this);
+        }
+
+        private void flush() {
+            if(blocks == blockStarts.length) {
+                int capacity = blocks * 2;
+                blockStarts = Arrays.copyOf(blockStarts, capacity);
+                blockModes = Arrays.copyOf(blockModes, capacity);
+                blockMins = Arrays.copyOf(blockMins, capacity);
+                blockMaxs = Arrays.copyOf(blockMaxs, capacity);
+            }
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            boolean constant = true;
+            int firstBits = Float.floatToRawIntBits(pending[0]);
+            for(int i = 0; i < filled; i++) {
+                float value = pending[i];
+                if(value < min) {
+                    min = value;
+                }
+                if(value > max) {
+                    max = value;
+                }
+                constant &= Float.floatToRawIntBits(value) == firstBits;
+            }
+            blockStarts[blocks] = bit;
+            blockMins[blocks] = min;
+            blockMaxs[blocks] = max;
+
+            if(constant) {
+                blockModes[blocks] = BLOCK_CONSTANT;
+                write(firstBits, Integer.SIZE);
+            } else {
+                int decimals = findDecimals();
+                long decimalBits = decimals < 0 ? Long.MAX_VALUE : decimalBits();
+                blockModes[blocks] = BLOCK_XOR;
+                int previous = 0;
+                int previousLeading = -1;
+                int previousTrailing = 0;
+                for(int i = 0; i < filled; i++) {
+                    int bits = Float.floatToRawIntBits(pending[i]);
+                    int xor = bits ^ previous;
+                    previous = bits;
+                    if(xor == 0) {
+                        write(0, 1);
+                        continue;
+                    }
+                    int leading = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+                    int trailing = Integer.numberOfTrailingZeros(xor);
+                    if(previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                        // the changed bits fit where the last ones were
+                        write(0b01, 2);
+                        write(xor >>> previousTrailing, Integer.SIZE - previousLeading - previousTrailing);
+                    } else {
+                        int meaningful = Integer.SIZE - leading - trailing;
+                        write(0b11, 2);
+                        write(leading, 5);
+                        write(meaningful - 1, 5);
+                        write(xor >>> trailing, meaningful);
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+                if(decimalBits < bit - blockStarts[blocks] && decimalBits <= (long) filled * Integer.SIZE) {
+                    clear(blockStarts[blocks]);
+                    blockModes[blocks] = BLOCK_DECIMAL;
+                    writeDecimals(decimals);
+                } else if(bit - blockStarts[blocks] > (long) filled * Integer.SIZE) {
+                    // noise doesn't compress; store it as it is
+                    clear(blockStarts[blocks]);
+                    blockModes[blocks] = BLOCK_RAW;
+                    for(int i = 0; i < filled; i++) {
+                        write(Float.floatToRawIntBits(pending[i]), Integer.SIZE);
+                    }
+                }
+            }
+            blocks++;
+            size += filled;
+            filled = 0;
+        }
+
+        /**
+         * The fewest decimals that every pending sample is exactly, filling {@link #ticks} with the samples at that
+         * many decimals.
+         *
+         * @return -1 if there are none, such as for samples that aren't finite
+         */
+        private int findDecimals() {
+            for(int decimals = 0; decimals <= MAX_DECIMALS; decimals++) {
+                double scale = POWERS_OF_TEN[decimals];
+                double unit = INVERSE_POWERS_OF_TEN[decimals];
+                boolean exact = true;
+                for(int i = 0; i < filled && exact; i++) {
+                    double scaled = pending[i] * scale;
+                    // also rules out NaN and infinities
+                    if(!(Math.abs(scaled) < Integer.MAX_VALUE)) {
+                        return -1;
+                    }
+                    long tick = Math.round(scaled);
+                    ticks[i] = tick;
+                    exact = Float.floatToRawIntBits((float) (tick * unit)) == Float.floatToRawIntBits(pending[i]);
+                }
+                if(exact) {
+                    return decimals;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Bits a block of {@link #ticks} takes as decimals: the decimals, the difference width and the first tick,
+         * then a difference per further tick.
+         */
+        private long decimalBits() {
+            return DECIMAL_HEADER_BITS + (long) (filled - 1) * differenceWidth();
+        }
+
+        private int differenceWidth() {
+            long bits = 0;
+            for(int i = 1; i < filled; i++) {
+                bits |= zigzag(ticks[i] - ticks[i - 1]);
+            }
+            return 64 - Long.numberOfLeadingZeros(bits);
+        }
+
+        private void writeDecimals(int decimals) {
+            int width = differenceWidth();
+            write(decimals, 3);
+            write(width, 6);
+            // ticks fit an int, see findDecimals, so differences fit 33 bits
+            write((int) ticks[0], Integer.SIZE);
+            for(int i = 1; i < filled; i++) {
+                long difference = zigzag(ticks[i] - ticks[i - 1]);
+                if(width > Integer.SIZE) {
+                    write((int) difference, Integer.SIZE);
+                    write((int) (difference >>> Integer.SIZE), width - Integer.SIZE);
+                } else {
+                    write((int) difference, width);
+                }
+            }
+        }
+
+        /**
+         * Append the low {@code count} bits of {@code value}, at most 32.
+         */
+        private void write(int value, int count) {
+            if(((bit + count + 63) >>> 6) > words.length) {
+                int capacity = words.length + (words.length >> 1) + 1;
+                if(capacity < 0 || capacity > Integer.MAX_VALUE - 8) {
+                    throw new OutOfMemoryError("Column is too large");
+                }
+                words = Arrays.copyOf(words, capacity);
+            }
+            long bits = (value & 0xFFFFFFFFL) & (count == Integer.SIZE ? -1L : (1L << count) - 1);
+            int word = (int) (bit >>> 6);
+            int shift = (int) (bit & 63);
+            words[word] |= bits << shift;
+            if(shift + count > 64) {
+                words[word + 1] |= bits >>> (64 - shift);
+            }
+            bit += count;
+        }
+
+        /**
+         * Drop the bits written from {@code from} on.
+         */
+        private void clear(long from) {
+            int word = (int) (from >>> 6);
+            int shift = (int) (from & 63);
+            words[word] &= shift == 0 ? 0 : (1L << shift) - 1;
+            Arrays.fill(words, word + 1, (int) Math.min(words.length, (bit + 63) >>> 6), 0);
+            bit = from;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public float get(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        int block = index >>> BLOCK_SHIFT;
+        DecodedBlock decoded = last;
+        if(decoded == null || decoded.block != block) {
+            float[] samples = new float[blockLength(block)];
+            decode(block, samples, 0);
+            decoded = new DecodedBlock(block, samples);
+            last = decoded;
+        }
+        return decoded.samples[index & (BLOCK_SIZE - 1)];
+    }
+
+    @Override
+    public void read(int from, int to, float[] out, int offset) {
+        if(from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for size " + size);
+        }
+        while(from < to) {
+            int block = from >>> BLOCK_SHIFT;
+            int blockStart = block << BLOCK_SHIFT;
+            int blockEnd = Math.min(to, blockStart + blockLength(block));
+            if(from == blockStart && blockEnd - from == blockLength(block)) {
+                // whole blocks are decoded straight into the output
+                decode(block, out, offset);
+            } else {
+                for(int i = from; i < blockEnd; i++) {
+                    out[offset + i - from] = get(i);
+                }
+            }
+            offset += blockEnd - from;
+            from = blockEnd;
+        }
+    }
+
+    int blockCount() {
+        return blockMins.length;
+    }
+
+    /**
+     * The smallest sample of a block, ignoring NaNs; positive infinity if it has nothing else.
+     */
+    float blockMin(int block) {
+        return blockMins[block];
+    }
+
+    /**
+     * The largest sample of a block, ignoring NaNs; negative infinity if it has nothing else.
+     */
+    float blockMax(int block) {
+        return blockMaxs[block];
+    }
+
+    /**
+     * Bytes of heap taken by the compressed samples and the block headers.
+     */
+    public long getHeapBytes() {
+        return (long) words.length * Long.BYTES
+                + (long) blockMins.length * (Long.BYTES + 1 + Float.BYTES + Float.BYTES);
+    }
+
+    private int blockLength(int block) {
+        return Math.min(BLOCK_SIZE, size - (block << BLOCK_SHIFT));
+    }
+
+    private void decode(int block, float[] out, int offset) {
+        int count = blockLength(block);
+        long bit = blockStarts[block];
+        if(blockModes[block] == BLOCK_CONSTANT) {
+            Arrays.fill(out, offset, offset + count, Float.intBitsToFloat(read(bit, Integer.SIZE)));
+            return;
+        }
+        if(blockModes[block] == BLOCK_DECIMAL) {
+            double unit = INVERSE_POWERS_OF_TEN[read(bit, 3)];
+            int width = read(bit + 3, 6);
+            long tick = read(bit + 9, Integer.SIZE);
+            bit += DECIMAL_HEADER_BITS;
+            out[offset] = (float) (tick * unit);
+            for(int i = 1; i < count; i++) {
+                long difference;
+                if(width > Integer.SIZE) {
+                    difference = (read(bit, Integer.SIZE) & 0xFFFFFFFFL)
+                            | (long) read(bit + Integer.SIZE, width - Integer.SIZE) << Integer.SIZE;
+                } else {
+                    difference = read(bit, width) & 0xFFFFFFFFL;
+                }
+                bit += width;
+                tick += (difference >>> 1) ^ -(difference & 1);
+                out[offset + i] = (float) (tick * unit);
+            }
+            return;
+        }
+        if(blockModes[block] == BLOCK_RAW) {
+            for(int i = 0; i < count; i++, bit += Integer.SIZE) {
+                out[offset + i] = Float.intBitsToFloat(read(bit, Integer.SIZE));
+            }
+            return;
+        }
+        int previous = 0;
+        int leading = 0;
+        int trailing = 0;
+        for(int i = 0; i < count; i++) {
+            if((words[(int) (bit >>> 6)] >>> (bit & 63) & 1) != 0) {
+                if((words[(int) ((bit + 1) >>> 6)] >>> ((bit + 1) & 63) & 1) != 0) {
+                    leading = read(bit + 2, 5);
+                    trailing = Integer.SIZE - leading - (read(bit + 7, 5) + 1);
+                    bit += 12;
+                } else {
+                    bit += 2;
+                }
+                int meaningful = Integer.SIZE - leading - trailing;
+                previous ^= read(bit, meaningful) << trailing;
+                bit += meaningful;
+            } else {
+                bit++;
+            }
+            out[offset + i] = Float.intBitsToFloat(previous);
+        }
+    }
+
+    /**
+     * Map small differences of either sign to small unsigned numbers.
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * The {@code count} bits, at most 32, starting at {@code bit}.
+     */
+    private int read(long bit, int count) {
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long value = words[word] >>> shift;
+        if(shift + count > 64) {
+            value |= words[word + 1] << (64 - shift);
+        }
+        return (int) (count == Integer.SIZE ? value : value & ((1L << count) - 1));
+    }
+}
@@ -0,0 +1,87 @@
+package view;
+
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Line;
+import metrics.FrameRenderEvent;
+import metrics.Metrics;
+import org.jfree.chart.ChartRenderingInfo;
+import org.jfree.chart.event.ChartProgressEvent;
+import org.jfree.chart.event.ChartProgressListener;
+import org.jfree.chart.fx.ChartViewer;
+import org.jfree.chart.plot.XYPlot;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Wraps a {@link ChartViewer} with a playback cursor drawn as a separate node on top of it, so moving the cursor
+ * never makes JFreeChart redraw the chart.
+ */
+public class ChartCursorOverlay extends StackPane implements TimeCursor {
+    private final ChartViewer viewer;
+    private final Line line = new Line();
+    private double time = Double.NaN;
+    private FrameRenderEvent renderEvent;
+    private long renderStart;
+
+    public ChartCursorOverlay(ChartViewer viewer) {
+        this.viewer = viewer;
+        line.setStroke(Color.RED);
+        line.setVisible(false);
+        Pane overlay = new Pane(line);
+        overlay.setMouseTransparent(true);
+        getChildren().addAll(viewer, overlay);
+
+        // the data area is only known once the chart has been drawn
+        viewer.getChart().addProgressListener(new ChartProgressListener() {
+            @Override
+            public void chartProgress(ChartProgressEvent event) {
+                if(event.getType() == ChartProgressEvent.DRAWING_STARTED) {
+                    renderEvent = new FrameRenderEvent();
+                    renderEvent.begin();
+                    renderStart = System.nanoTime();
+                } else if(event.getType() == ChartProgressEvent.DRAWING_FINISHED) {
+                    if(renderEvent != null) {
+                        Metrics.FRAME_RENDER.record((System.nanoTime() - renderStart) / Metrics.NANOS_PER_MILLI);
+                        renderEvent.tracks = 1;
+                        renderEvent.points = viewer.getChart().getXYPlot().getDataset().getItemCount(0);
+                        renderEvent.commit();
+                        renderEvent = null;
+                    }
+                    positionLine();
+                }
+            }
+        });
+    }
+
+    public ChartViewer getViewer() {
+        return viewer;
+    }
+
+    @Override
+    public void setCursorTime(double seconds) {
+        time = seconds;
+        positionLine();
+    }
+
+    private void positionLine() {
+        ChartRenderingInfo info = viewer.getRenderingInfo();
+        if(Double.isNaN(time) || info == null) {
+            line.setVisible(false);
+            return;
+        }
+        Rectangle2D dataArea = info.getPlotInfo().getDataArea();
+        XYPlot plot = viewer.getChart().getXYPlot();
+        double x = plot.getDomainAxis().valueToJava2D(time, dataArea, plot.getDomainAxisEdge());
+        if(dataArea.isEmpty() || x < dataArea.getMinX() || x > dataArea.getMaxX()) {
+            line.setVisible(false);
+            return;
+        }
+        line.setStartX(Math.floor(x) + 0.5);  // 0.5 for crispness
+        line.setEndX(line.getStartX());
+        line.setStartY(dataArea.getMinY());
+        line.setEndY(dataArea.getMaxY());
+        line.setVisible(true);
+    }
+}
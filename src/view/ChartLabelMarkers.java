@@ -0,0 +1,79 @@
+package view;
+
+import javafx.application.Platform;
+import model.LabelIndex;
+import model.TimeLabel;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
+import org.jfree.chart.plot.IntervalMarker;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.ui.Layer;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a JFreeChart plot's domain markers in step with the labels in its visible range. Markers are pooled and
+ * reused, so panning through tens of thousands of labels only ever touches the few on screen.
+ */
+public class ChartLabelMarkers {
+    private static final Color LABEL_COLOR = new Color(0, 0, 255, 51);
+
+    private final XYPlot plot;
+    private final LabelIndex labels;
+    private final List<IntervalMarker> markers = new ArrayList<>();
+    private int usedMarkers = 0;
+    private final AxisChangeListener axisChanged = new AxisChangeListener() {
+        @Override
+        public void axisChanged(AxisChangeEvent event) {
+            // the plot redraws for the axis change anyway
+            update(false);
+        }
+    };
+    private final Runnable labelsChanged = () -> Platform.runLater(() -> update(true));
+
+    public ChartLabelMarkers(XYPlot plot, LabelIndex labels) {
+        this.plot = plot;
+        this.labels = labels;
+        plot.getDomainAxis().addChangeListener(axisChanged);
+        labels.addChangeListener(labelsChanged);
+        update(true);
+    }
+
+    /**
+     * Stop following the labels and the plot's axis.
+     */
+    public void dispose() {
+        plot.getDomainAxis().removeChangeListener(axisChanged);
+        labels.removeChangeListener(labelsChanged);
+    }
+
+    private void update(boolean notify) {
+        for(int i = 0; i < usedMarkers; i++) {
+            plot.removeDomainMarker(0, markers.get(i), Layer.BACKGROUND, false);
+        }
+        usedMarkers = 0;
+
+        ValueAxis domainAxis = plot.getDomainAxis();
+        labels.query(domainAxis.getLowerBound(), domainAxis.getUpperBound(), this::showMarker);
+        if(notify) {
+            plot.setNotify(true);
+        }
+    }
+
+    private void showMarker(TimeLabel label) {
+        IntervalMarker marker;
+        if(usedMarkers < markers.size()) {
+            marker = markers.get(usedMarkers);
+            marker.setStartValue(label.getStart());
+            marker.setEndValue(label.getEnd());
+        } else {
+            marker = new IntervalMarker(label.getStart(), label.getEnd(), LABEL_COLOR);
+            markers.add(marker);
+        }
+        usedMarkers++;
+        plot.addDomainMarker(0, marker, Layer.BACKGROUND, false);
+    }
+}
@@ -0,0 +1,115 @@
+package view;
+
+import model.DecimatedWaveformDataset;
+import model.LabelIndex;
+import model.TimeRange;
+import model.WaveformFile;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
+import org.jfree.chart.fx.ChartViewer;
+import org.jfree.chart.plot.PlotOrientation;
+
+import java.security.InvalidKeyException;
+
+/**
+ * One column charted by JFreeChart, for the {@code labelme.renderer=jfreechart} fallback. The chart follows the shared
+ * {@link TimeRange} only while it is showing: a chart scrolled out of view just remembers that the range moved and
+ * catches up when it is scrolled back, so panning costs the same however many charts are open. {@link #dispose()}
+ * lets go of the file, the labels and the range once the column is unchecked.
+ *
+ * The fallback is not virtualized: every checked column keeps its own {@link ChartViewer} and chart whether it is in
+ * view or not, unlike the lanes of {@link WaveformTrackView}, so it suits a few dozen columns rather than hundreds.
+ */
+public class ChartTrack extends ChartCursorOverlay {
+    private final WaveformFile file;
+    private final String column;
+    private final TimeRange range;
+    private final DecimatedWaveformDataset dataset;
+    private final ChartLabelMarkers markers;
+    private final ValueAxis domainAxis;
+    private final Runnable rangeChanged = this::followRange;
+    private boolean showing = true;
+    private boolean stale = false;
+
+    public ChartTrack(WaveformFile file, String column, TimeRange range, LabelIndex labels)
+            throws InvalidKeyException {
+        this(file, column, range, labels, file.getDecimatedWaveform(column));
+    }
+
+    private ChartTrack(WaveformFile file, String column, TimeRange range, LabelIndex labels,
+                       DecimatedWaveformDataset dataset) {
+        super(new ChartViewer(ChartFactory.createXYLineChart(
+                file.getFilename() + ": " + column,
+                "Time",
+                column,
+                dataset,
+                PlotOrientation.VERTICAL,
+                false, false, false)));
+        this.file = file;
+        this.column = column;
+        this.range = range;
+        this.dataset = dataset;
+        JFreeChart chart = getViewer().getChart();
+        domainAxis = chart.getXYPlot().getDomainAxis();
+        domainAxis.setRange(range.getStart(), range.getEnd());
+        range.addListener(rangeChanged);
+
+        // only fetch about two points per pixel of whatever time range is on screen
+        domainAxis.addChangeListener(new AxisChangeListener() {
+            @Override
+            public void axisChanged(AxisChangeEvent event) {
+                range.set(domainAxis.getLowerBound(), domainAxis.getUpperBound());
+                resample();
+            }
+        });
+        getViewer().widthProperty().addListener((observable, oldValue, newValue) -> resample());
+        markers = new ChartLabelMarkers(chart.getXYPlot(), labels);
+    }
+
+    public WaveformFile getFile() {
+        return file;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public DecimatedWaveformDataset getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Whether any of the chart is in the viewport. A chart that is not showing doesn't redraw for range changes.
+     */
+    public void setShowing(boolean showing) {
+        this.showing = showing;
+        if(showing && stale) {
+            followRange();
+        }
+    }
+
+    public void dispose() {
+        range.removeListener(rangeChanged);
+        markers.dispose();
+        dataset.dispose();
+    }
+
+    private void followRange() {
+        if(!showing) {
+            stale = true;
+            return;
+        }
+        stale = false;
+        domainAxis.setRange(range.getStart(), range.getEnd());
+    }
+
+    private void resample() {
+        double width = getViewer().getWidth();
+        if(width > 0) {
+            dataset.update(domainAxis.getLowerBound(), domainAxis.getUpperBound(), (int) Math.ceil(width));
+        }
+    }
+}
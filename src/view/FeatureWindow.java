@@ -0,0 +1,70 @@
+package view;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.ToolBar;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+import javafx.util.Callback;
+import model.LabelFeatures;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Window with a table of the features of every label and column, and a button to export them.
+ */
+public class FeatureWindow extends Stage {
+    private final TableView<LabelFeatures> table = new TableView<>();
+    private final Button exportButton = new Button("Export CSV");
+
+    public FeatureWindow() {
+        setTitle("Label Features");
+        table.getColumns().add(column("Label", feature -> feature.getLabel().getName().isEmpty()
+                ? "#" + feature.getLabel().getId() : feature.getLabel().getName()));
+        table.getColumns().add(column("Start", feature -> feature.getLabel().getStart()));
+        table.getColumns().add(column("End", feature -> feature.getLabel().getEnd()));
+        table.getColumns().add(column("Column", LabelFeatures::getColumn));
+        table.getColumns().add(column("Samples", LabelFeatures::getCount));
+        table.getColumns().add(column("Mean", LabelFeatures::getMean));
+        table.getColumns().add(column("Variance", LabelFeatures::getVariance));
+        table.getColumns().add(column("RMS", LabelFeatures::getRms));
+        table.getColumns().add(column("Min", LabelFeatures::getMin));
+        table.getColumns().add(column("Max", LabelFeatures::getMax));
+        table.getColumns().add(column("Zero crossings", LabelFeatures::getZeroCrossings));
+        table.getColumns().add(column("Dominant Hz", LabelFeatures::getDominantFrequency));
+
+        BorderPane root = new BorderPane(table);
+        root.setTop(new ToolBar(exportButton));
+        setScene(new Scene(root, 900, 400));
+    }
+
+    private static <T> TableColumn<LabelFeatures, T> column(String title, Function<LabelFeatures, T> value) {
+        TableColumn<LabelFeatures, T> column = new TableColumn<>(title);
+        column.setCellValueFactory(new Callback<TableColumn.CellDataFeatures<LabelFeatures, T>, ObservableValue<T>>() {
+            @Override
+            public ObservableValue<T> call(TableColumn.CellDataFeatures<LabelFeatures, T> cell) {
+                return new ReadOnlyObjectWrapper<>(value.apply(cell.getValue()));
+            }
+        });
+        return column;
+    }
+
+    public void setFeatures(List<LabelFeatures> features) {
+        table.getItems().setAll(features);
+    }
+
+    public List<LabelFeatures> getFeatures() {
+        return table.getItems();
+    }
+
+    public void setOnExport(EventHandler<ActionEvent> handler) {
+        exportButton.setOnAction(handler);
+    }
+}
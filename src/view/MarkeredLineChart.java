@@ -1,34 +1,35 @@
 package view;
 
-import javafx.beans.InvalidationListener;
-import javafx.beans.Observable;
-import javafx.beans.binding.FloatBinding;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.application.Platform;
 import javafx.scene.chart.Axis;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.ValueAxis;
 import javafx.scene.chart.XYChart;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Line;
 import javafx.scene.shape.Rectangle;
+import model.LabelIndex;
+import model.TimeLabel;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Nearly entirely comes from: http://stackoverflow.com/a/28955561
  *
  * Created by richard on 7/25/16.
  */
-public class MarkeredLineChart extends LineChart<Number, Number> {
+public class MarkeredLineChart extends LineChart<Number, Number> implements TimeCursor {
     private XYChart.Data<Float, Float> timeMarker;
-    private ObservableList<XYChart.Data<Float, Float>> verticalRangeMarkers;
+    private LabelIndex labels;
+    private final Runnable labelsChanged = () -> Platform.runLater(this::requestChartLayout);
+    // rectangles are reused between layouts; only labels in the visible range get one
+    private final List<Rectangle> rangeMarkers = new ArrayList<>();
+    private int usedRangeMarkers;
 
     public MarkeredLineChart(NumberAxis xAxis, NumberAxis yAxis) {
         super(xAxis, yAxis);
-        verticalRangeMarkers = FXCollections.observableArrayList(data -> new Observable[] {data.XValueProperty()});
-        verticalRangeMarkers = FXCollections.observableArrayList(data -> new Observable[] {data.YValueProperty()}); // 2nd type of the range is X type as well
-        verticalRangeMarkers.addListener((InvalidationListener) observable -> layoutPlotChildren());
 
         timeMarker = new XYChart.Data(0, 0);
         Line line = new Line();
@@ -40,47 +41,69 @@ public class MarkeredLineChart extends LineChart<Number, Number> {
         timeMarker.setXValue(time);
     }
 
-    public void addVerticalRangeMarker(XYChart.Data<Float, Float> marker) {
-        Objects.requireNonNull(marker, "the marker must not be null");
-        if (verticalRangeMarkers.contains(marker)) return;
-
-        Rectangle rectangle = new Rectangle(0,0,0,0);
-        rectangle.setStroke(Color.TRANSPARENT);
-        rectangle.setFill(Color.BLUE.deriveColor(1, 1, 1, 0.2));
-
-        marker.setNode(rectangle);
-
-        getPlotChildren().add(rectangle);
-        verticalRangeMarkers.add(marker);
+    /**
+     * Move the time marker without laying out the series again.
+     */
+    @Override
+    public void setCursorTime(double seconds) {
+        updateTime((float) seconds);
+        layoutTimeMarker();
     }
 
-    public void removeVerticalRangeMarker(XYChart.Data<Float, Float> marker) {
-        Objects.requireNonNull(marker, "the marker must not be null");
-        if (marker.getNode() != null) {
-            getPlotChildren().remove(marker.getNode());
-            marker.setNode(null);
+    public void setLabels(LabelIndex labels) {
+        if(this.labels != null) {
+            this.labels.removeChangeListener(labelsChanged);
+        }
+        this.labels = labels;
+        if(labels != null) {
+            labels.addChangeListener(labelsChanged);
         }
-        verticalRangeMarkers.remove(marker);
+        requestChartLayout();
     }
 
     @Override
     public void layoutPlotChildren() {
         super.layoutPlotChildren();
+        layoutTimeMarker();
 
+        usedRangeMarkers = 0;
+        if (labels != null) {
+            ValueAxis<Number> xAxis = (ValueAxis<Number>) getXAxis();
+            labels.query(xAxis.getLowerBound(), xAxis.getUpperBound(), this::layoutRangeMarker);
+        }
+        for (int i = usedRangeMarkers; i < rangeMarkers.size(); i++) {
+            rangeMarkers.get(i).setVisible(false);
+        }
+    }
+
+    private void layoutTimeMarker() {
         Line line = (Line) timeMarker.getNode();
         line.setStartX(getXAxis().getDisplayPosition(timeMarker.getXValue()) + 0.5);  // 0.5 for crispness
         line.setEndX(line.getStartX());
         line.setStartY(0d);
         line.setEndY(getBoundsInLocal().getHeight());
         line.toFront();
+    }
 
-        for (XYChart.Data<Float, Float> verticalRangeMarker : verticalRangeMarkers) {
-            Rectangle rectangle = (Rectangle) verticalRangeMarker.getNode();
-            rectangle.setX(getXAxis().getDisplayPosition(verticalRangeMarker.getXValue()) + 0.5);  // 0.5 for crispness
-            rectangle.setWidth(getXAxis().getDisplayPosition(verticalRangeMarker.getYValue()) - getXAxis().getDisplayPosition(verticalRangeMarker.getXValue()));
-            rectangle.setY(0d);
-            rectangle.setHeight(getBoundsInLocal().getHeight());
-            rectangle.toBack();
+    private void layoutRangeMarker(TimeLabel label) {
+        Rectangle rectangle;
+        if (usedRangeMarkers < rangeMarkers.size()) {
+            rectangle = rangeMarkers.get(usedRangeMarkers);
+        } else {
+            rectangle = new Rectangle(0,0,0,0);
+            rectangle.setStroke(Color.TRANSPARENT);
+            rectangle.setFill(Color.BLUE.deriveColor(1, 1, 1, 0.2));
+            rangeMarkers.add(rectangle);
+            getPlotChildren().add(rectangle);
         }
+        usedRangeMarkers++;
+
+        Axis<Number> xAxis = getXAxis();
+        rectangle.setVisible(true);
+        rectangle.setX(xAxis.getDisplayPosition(label.getStart()) + 0.5);  // 0.5 for crispness
+        rectangle.setWidth(xAxis.getDisplayPosition(label.getEnd()) - xAxis.getDisplayPosition(label.getStart()));
+        rectangle.setY(0d);
+        rectangle.setHeight(getBoundsInLocal().getHeight());
+        rectangle.toBack();
     }
 }
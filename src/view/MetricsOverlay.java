@@ -0,0 +1,53 @@
+package view;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+import javafx.scene.text.Font;
+import metrics.Metric;
+import metrics.Metrics;
+
+/**
+ * Translucent panel listing the current {@link Metrics}, refreshed a few times a second while it is showing.
+ */
+public class MetricsOverlay extends Label {
+    private static final long REFRESH_INTERVAL = 250_000_000L;
+
+    private final AnimationTimer refresher = new AnimationTimer() {
+        private long last = 0;
+
+        @Override
+        public void handle(long now) {
+            if(now - last >= REFRESH_INTERVAL) {
+                last = now;
+                refresh();
+            }
+        }
+    };
+
+    public MetricsOverlay() {
+        setMouseTransparent(true);
+        setFont(Font.font("Monospaced", 11));
+        setStyle("-fx-background-color: rgba(0, 0, 0, 0.7); -fx-text-fill: white; -fx-padding: 6;");
+        setMaxSize(USE_PREF_SIZE, USE_PREF_SIZE);
+        setVisible(false);
+    }
+
+    public void setShowing(boolean showing) {
+        setVisible(showing);
+        if(showing) {
+            refresh();
+            refresher.start();
+        } else {
+            refresher.stop();
+        }
+    }
+
+    private void refresh() {
+        StringBuilder text = new StringBuilder();
+        for(Metric metric : Metrics.all()) {
+            text.append(metric).append('\n');
+        }
+        text.append(String.format("Heap used: %.1f MB", Metrics.usedHeapMegabytes()));
+        setText(text.toString());
+    }
+}
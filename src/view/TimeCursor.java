@@ -0,0 +1,9 @@
+package view;
+
+/**
+ * A waveform view that shows the current playback time as a cursor. Implementations only move the cursor and must
+ * not redraw their waveform data.
+ */
+public interface TimeCursor {
+    void setCursorTime(double seconds);
+}
@@ -5,13 +5,13 @@ import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.stage.FileChooser;
-import model.WaveformFile;
+import model.TimeLabel;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Optional;
 
 /**
@@ -31,7 +31,10 @@ public class UserInterfaceElements {
     private ContextMenu waveformListContextMenu;
     private FileChooser videoFileChooser;
     private FileChooser waveformFileChooser;
+    private FileChooser labelExportFileChooser;
+    private FileChooser featureExportFileChooser;
     private ChoiceDialog<String> chooseTimeColumnDialog;
+    private TextInputDialog streamAddressDialog;
 
     private UserInterfaceElements(Controller controller) {
         this.controller = controller;
@@ -39,7 +42,10 @@ public class UserInterfaceElements {
         createWaveformListContextMenu();
         createVideoFileChooser();
         createWaveformFileChooser();
+        createLabelExportFileChooser();
+        createFeatureExportFileChooser();
         createChooseTimeColumnDialog();
+        createStreamAddressDialog();
     }
 
     private void createWaveformListContextMenu() {
@@ -50,7 +56,7 @@ public class UserInterfaceElements {
             @Override
             public void handle(ActionEvent event) {
                 // Create the custom dialog.
-                Dialog<XYChart.Data<Float, Float>> dialog = new Dialog<>();
+                Dialog<TimeLabel> dialog = new Dialog<>();
                 dialog.setTitle("Add a label");
                 dialog.setHeaderText("Select start/end times for the label");
 
@@ -72,18 +78,29 @@ public class UserInterfaceElements {
                 grid.add(new Label("End time (seconds):"), 0, 1);
                 grid.add(endTime, 1, 1);
 
+                CheckBox snapToFrames = new CheckBox("Snap to video frames");
+                snapToFrames.setSelected(controller.hasVideoFrames());
+                snapToFrames.setDisable(!controller.hasVideoFrames());
+                grid.add(snapToFrames, 1, 2);
+
                 // TODO validation on start/end times
 
                 Platform.runLater(() -> startTime.requestFocus());
                 dialog.getDialogPane().setContent(grid);
                 dialog.setResultConverter(dialogButton -> {
                     if (dialogButton == addButton) {
-                        return new XYChart.Data<>(Float.parseFloat(startTime.getText()), Float.parseFloat(endTime.getText()));
+                        double start = Double.parseDouble(startTime.getText());
+                        double end = Double.parseDouble(endTime.getText());
+                        if(snapToFrames.isSelected()) {
+                            start = controller.snapToVideoFrame(start);
+                            end = controller.snapToVideoFrame(end);
+                        }
+                        return new TimeLabel(start, end);
                     }
                     return null;
                 });
 
-                Optional<XYChart.Data<Float, Float>> result = dialog.showAndWait();
+                Optional<TimeLabel> result = dialog.showAndWait();
                 if(result.isPresent()) {
                     controller.addLabel(result.get());
                 }
@@ -115,16 +132,52 @@ public class UserInterfaceElements {
         return waveformFileChooser;
     }
 
+    private void createLabelExportFileChooser() {
+        labelExportFileChooser = new FileChooser();
+        labelExportFileChooser.setTitle("Export Labels");
+        labelExportFileChooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("CSV", "*.csv"),
+                new FileChooser.ExtensionFilter("JSON", "*.json"));
+    }
+
+    public FileChooser getLabelExportFileChooser() {
+        return labelExportFileChooser;
+    }
+
+    private void createFeatureExportFileChooser() {
+        featureExportFileChooser = new FileChooser();
+        featureExportFileChooser.setTitle("Export Label Features");
+        featureExportFileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV", "*.csv"));
+    }
+
+    public FileChooser getFeatureExportFileChooser() {
+        return featureExportFileChooser;
+    }
+
+    private void createStreamAddressDialog() {
+        streamAddressDialog = new TextInputDialog("localhost:5000");
+        streamAddressDialog.setTitle("Connect to Waveform Stream");
+        streamAddressDialog.setHeaderText("The logger must send CSV text, starting with a header line");
+        streamAddressDialog.setContentText("Host and port: ");
+    }
+
+    public TextInputDialog getStreamAddressDialog() {
+        return streamAddressDialog;
+    }
+
     private void createChooseTimeColumnDialog() {
         chooseTimeColumnDialog = new ChoiceDialog<>();
         chooseTimeColumnDialog.setTitle("Importing Waveform File");
         chooseTimeColumnDialog.setContentText("Choose time column: ");
     }
 
-    public Dialog<String> getChooseTimeColumnDialog(WaveformFile waveformFile) {
-        chooseTimeColumnDialog.getItems().setAll(waveformFile.getColumnHeaders());
-        chooseTimeColumnDialog.setSelectedItem(waveformFile.getColumnHeaders().iterator().next());
-        chooseTimeColumnDialog.setHeaderText("Importing " + waveformFile.getFilename());
+    /**
+     * Asks which of a file's or stream's columns is its time column, before its samples are loaded.
+     */
+    public Dialog<String> getChooseTimeColumnDialog(String name, String[] headers) {
+        chooseTimeColumnDialog.getItems().setAll(headers);
+        // a column named like the default is the likely answer
+        chooseTimeColumnDialog.setSelectedItem(Arrays.asList(headers).contains("time") ? "time" : headers[0]);
+        chooseTimeColumnDialog.setHeaderText("Importing " + name);
         return chooseTimeColumnDialog;
     }
 }
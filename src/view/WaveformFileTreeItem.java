@@ -0,0 +1,127 @@
+package view;
+
+import javafx.collections.ObservableList;
+import javafx.scene.control.CheckBoxTreeItem;
+import javafx.scene.control.TreeItem;
+import model.WaveformColumn;
+import model.WaveformFile;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A file in the resource tree: its editable time offset followed by a check box per column. The children are only
+ * created when the item is first expanded, and the item for a column only when it is first shown, so opening files
+ * with thousands of columns costs nothing until they are looked at. A filter narrows the columns shown; a column that
+ * is filtered out and back in keeps its item, and with it whether it is checked.
+ */
+public class WaveformFileTreeItem extends TreeItem<String> {
+    /**
+     * A column's check box.
+     */
+    public static class ColumnItem extends CheckBoxTreeItem<String> {
+        private final WaveformColumn column;
+
+        ColumnItem(WaveformColumn column) {
+            super(column.getName());
+            this.column = column;
+        }
+
+        public WaveformColumn getColumn() {
+            return column;
+        }
+    }
+
+    private final WaveformFile file;
+    private final List<WaveformColumn> columns;
+    private final TreeItem<String> offsetItem;
+    private final ColumnItem[] columnItems;
+    // the indices of the columns shown, or null for all of them
+    private BitSet filter;
+    private boolean childrenCreated = false;
+
+    /**
+     * @param columns the file's columns, in order
+     */
+    public WaveformFileTreeItem(WaveformFile file, List<WaveformColumn> columns) {
+        super(file.getFilename());
+        this.file = file;
+        this.columns = columns;
+        this.offsetItem = new TreeItem<>(file.getFormattedOffsetTime());
+        this.columnItems = new ColumnItem[columns.size()];
+    }
+
+    public WaveformFile getFile() {
+        return file;
+    }
+
+    public TreeItem<String> getOffsetItem() {
+        return offsetItem;
+    }
+
+    /**
+     * The columns whose check boxes are checked, in order.
+     */
+    public List<WaveformColumn> getCheckedColumns() {
+        List<WaveformColumn> checked = new ArrayList<>();
+        // a column never shown has no check box to check
+        for(ColumnItem item : columnItems) {
+            if(item != null && item.isSelected()) {
+                checked.add(item.getColumn());
+            }
+        }
+        return checked;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return false;
+    }
+
+    @Override
+    public ObservableList<TreeItem<String>> getChildren() {
+        if(!childrenCreated) {
+            childrenCreated = true;
+            createChildren();
+        }
+        return super.getChildren();
+    }
+
+    /**
+     * Show only some columns.
+     *
+     * @param matches indices of the columns to show, or null to show them all
+     */
+    public void setFilter(BitSet matches) {
+        filter = matches;
+        if(isExpanded()) {
+            createChildren();
+        } else {
+            // until it is expanded again
+            childrenCreated = false;
+        }
+    }
+
+    private void createChildren() {
+        List<TreeItem<String>> children = new ArrayList<>();
+        children.add(offsetItem);
+        if(filter == null) {
+            for(int i = 0; i < columnItems.length; i++) {
+                children.add(getColumnItem(i));
+            }
+        } else {
+            for(int i = filter.nextSetBit(0); i >= 0 && i < columnItems.length; i = filter.nextSetBit(i + 1)) {
+                children.add(getColumnItem(i));
+            }
+        }
+        super.getChildren().setAll(children);
+    }
+
+    private ColumnItem getColumnItem(int index) {
+        if(columnItems[index] == null) {
+            columnItems[index] = new ColumnItem(columns.get(index));
+        }
+        return columnItems[index];
+    }
+}
@@ -0,0 +1,665 @@
+package view;
+
+import javafx.application.Platform;
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Line;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
+import metrics.ChartBuildEvent;
+import metrics.FrameRenderEvent;
+import metrics.Metrics;
+import model.Decimation;
+import model.LabelIndex;
+import model.MinMaxPyramid;
+import model.SampleColumn;
+import model.TimeLabel;
+import model.TimeRange;
+import model.WaveformFile;
+
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+/**
+ * Draws every selected column as a stacked lane on one canvas, sharing a single time axis. The canvas is only as tall
+ * as the view, and lanes that don't fit scroll under the axis with the scroll bar on the right; only the lanes on
+ * screen are read and drawn. Each visible lane reads about two points per pixel from its column's
+ * {@link MinMaxPyramid} into one of a few buffers that are handed from lane to lane as the view scrolls, much like
+ * list cells, so neither redrawing nor scrolling allocates per sample or per track however many are open. Hovering
+ * over a lane shows the column's value at the time under the mouse. While a file is still being written the view
+ * follows its newest samples, unless it was scrolled away from them.
+ *
+ * The visible span is a {@link TimeRange} shared with the other waveform views: the mouse wheel zooms around the
+ * pointer, shift+wheel or dragging pans, a double click shows everything again, and the other views follow. Only the
+ * samples inside the span are read, so redrawing costs the same at any zoom however long the recording is.
+ */
+public class WaveformTrackView extends Region implements TimeCursor {
+    private static final double LANE_HEIGHT = 120;
+    private static final double LANE_PADDING = 6;
+    private static final double AXIS_HEIGHT = 24;
+    private static final double MIN_TICK_SPACING = 100;
+    private static final double ZOOM_PER_NOTCH = 1.25;
+    private static final double PIXELS_PER_NOTCH = 40;
+    private static final Color BACKGROUND_COLOR = Color.WHITE;
+    private static final Color LANE_SEPARATOR_COLOR = Color.gray(0.8);
+    private static final Color AXIS_COLOR = Color.gray(0.3);
+    private static final Color CURSOR_COLOR = Color.RED;
+    private static final Color LABEL_COLOR = Color.BLUE.deriveColor(1, 1, 1, 0.2);
+    private static final Color[] TRACK_COLORS = {
+            Color.web("#1f77b4"), Color.web("#d62728"), Color.web("#2ca02c"), Color.web("#ff7f0e"),
+            Color.web("#9467bd"), Color.web("#8c564b"), Color.web("#e377c2"), Color.web("#17becf")
+    };
+
+    /**
+     * One column of one file, drawn as a lane.
+     */
+    public static class Track {
+        private final WaveformFile file;
+        private final String column;
+        private final Color color;
+        private final String title;
+        private final Runnable offsetChanged;
+        private final Runnable dataChanged;
+        // only touched on the FX thread
+        private boolean preparing = false;
+        private String failure;
+
+        Track(WaveformFile file, String column, Color color, Runnable offsetChanged, Runnable dataChanged) {
+            this.file = file;
+            this.offsetChanged = offsetChanged;
+            this.dataChanged = dataChanged;
+            this.column = column;
+            this.color = color;
+            this.title = file.getFilename() + ": " + column;
+        }
+
+        public WaveformFile getFile() {
+            return file;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    /**
+     * Buffers for drawing one lane, reused by whichever track is in that row of the screen.
+     */
+    private static class LaneBuffers {
+        private final Decimation decimation = new Decimation();
+        private double[] xs = new double[0];
+        private double[] ys = new double[0];
+    }
+
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar laneScroller = new ScrollBar();
+    private final List<LaneBuffers> laneBuffers = new ArrayList<>();
+    // the cursor is its own node over the canvas so moving it never redraws the waveforms
+    private final Line cursor = new Line();
+    private double cursorTime = Double.NaN;
+    private final Text readout = new Text();
+    private final List<Track> tracks = new ArrayList<>();
+    private final Runnable labelsChanged = this::requestRedraw;
+    private LabelIndex labels;
+    private final TimeRange range;
+    private final Executor loader;
+    private BiConsumer<Track, Throwable> onTrackFailed;
+    // copies of the range, so a frame is drawn with one consistent span
+    private double start;
+    private double end;
+    private double dragX = Double.NaN;
+    private double dragStart;
+    // newest sample time over all tracks when last looked at, to tell whether the view is following it
+    private double dataEnd = Double.NaN;
+    private boolean fitted = false;
+    private boolean redrawPending = false;
+    private int nextColor = 0;
+
+    /**
+     * @param loader runs the decoding of lazily decoded columns and the building of their pyramids, which the view
+     *               waits for with a placeholder in the lane rather than on the FX thread
+     */
+    public WaveformTrackView(TimeRange range, Executor loader) {
+        this.range = range;
+        this.loader = loader;
+        start = range.getStart();
+        end = range.getEnd();
+        range.addListener(() -> {
+            start = range.getStart();
+            end = range.getEnd();
+            layoutCursor();
+            requestRedraw();
+        });
+        cursor.setStroke(CURSOR_COLOR);
+        cursor.setMouseTransparent(true);
+        cursor.setVisible(false);
+        readout.setMouseTransparent(true);
+        readout.setTextOrigin(VPos.BOTTOM);
+        readout.setVisible(false);
+        laneScroller.setOrientation(Orientation.VERTICAL);
+        laneScroller.setUnitIncrement(LANE_HEIGHT / 4);
+        laneScroller.setVisible(false);
+        laneScroller.valueProperty().addListener((observable, oldValue, newValue) -> requestRedraw());
+        // the wheel zooms over the lanes, so it scrolls them only over the scroll bar
+        laneScroller.addEventHandler(ScrollEvent.SCROLL, event -> {
+            scrollLanes(-event.getDeltaY());
+            event.consume();
+        });
+        getChildren().addAll(canvas, cursor, readout, laneScroller);
+        addEventHandler(MouseEvent.MOUSE_MOVED, event -> showReadout(event.getX(), event.getY()));
+        addEventHandler(MouseEvent.MOUSE_EXITED, event -> readout.setVisible(false));
+        addEventHandler(ScrollEvent.SCROLL, this::scrolled);
+        addEventHandler(MouseEvent.MOUSE_PRESSED, event -> {
+            if(event.getButton() == MouseButton.PRIMARY) {
+                dragX = event.getX();
+                dragStart = start;
+            }
+        });
+        addEventHandler(MouseEvent.MOUSE_DRAGGED, event -> {
+            double width = canvas.getWidth();
+            if(!Double.isNaN(dragX) && width > 0) {
+                double span = end - start;
+                double shifted = dragStart - (event.getX() - dragX) * span / width;
+                range.set(shifted, shifted + span);
+                readout.setVisible(false);
+            }
+        });
+        addEventHandler(MouseEvent.MOUSE_RELEASED, event -> dragX = Double.NaN);
+        addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
+            if(event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
+                fitTimeRange();
+            }
+        });
+    }
+
+    private void scrolled(ScrollEvent event) {
+        double width = canvas.getWidth();
+        if(width <= 0 || tracks.isEmpty()) {
+            return;
+        }
+        double deltaX = event.getDeltaX();
+        double deltaY = event.getDeltaY();
+        if(event.isShiftDown() || Math.abs(deltaX) > Math.abs(deltaY)) {
+            // some platforms report shift+wheel as horizontal scrolling
+            double delta = deltaX != 0 ? deltaX : deltaY;
+            range.pan(-delta * (end - start) / width);
+        } else if(deltaY != 0) {
+            range.zoom(timeAt(event.getX()), Math.pow(ZOOM_PER_NOTCH, -deltaY / PIXELS_PER_NOTCH));
+        }
+        // keep the scroll pane around the view from scrolling too
+        event.consume();
+    }
+
+    /**
+     * Time on the shared timeline under a horizontal position in this view.
+     */
+    public double timeAt(double x) {
+        double width = canvas.getWidth();
+        return width <= 0 ? Double.NaN : start + x * (end - start) / width;
+    }
+
+    private void scrollLanes(double pixels) {
+        laneScroller.setValue(Math.max(laneScroller.getMin(),
+                Math.min(laneScroller.getMax(), laneScroller.getValue() + pixels)));
+    }
+
+    private void showReadout(double x, double y) {
+        int lane = (int) Math.floor((y - AXIS_HEIGHT + laneScroller.getValue()) / LANE_HEIGHT);
+        double time = timeAt(x);
+        if(y < AXIS_HEIGHT || lane >= tracks.size() || Double.isNaN(time)) {
+            readout.setVisible(false);
+            return;
+        }
+        Track track = tracks.get(lane);
+        double value = Double.NaN;
+        // a column still being decoded has nothing to show yet, and reading it here would decode it on the FX thread
+        if(track.file.isDecoded(track.column)) {
+            try {
+                value = track.file.valueAt(track.column, time);
+            } catch (InvalidKeyException e) {
+                value = Double.NaN;
+            }
+        }
+        readout.setText(String.format("%.3f s: %s", time, Double.isNaN(value) ? "-" : String.format("%.4g", value)));
+        // keep the text inside the view when hovering near the right edge
+        double textX = x + 8;
+        double textWidth = readout.getLayoutBounds().getWidth();
+        if(textX + textWidth > canvas.getWidth()) {
+            textX = x - 8 - textWidth;
+        }
+        readout.relocate(textX, y - readout.getLayoutBounds().getHeight() - 4);
+        readout.setVisible(true);
+    }
+
+    @Override
+    public void setCursorTime(double seconds) {
+        cursorTime = seconds;
+        layoutCursor();
+    }
+
+    private void layoutCursor() {
+        double width = canvas.getWidth();
+        if(Double.isNaN(cursorTime) || end <= start || cursorTime < start || cursorTime > end) {
+            cursor.setVisible(false);
+            return;
+        }
+        double x = Math.floor((cursorTime - start) * width / (end - start)) + 0.5;  // 0.5 for crispness
+        cursor.setStartX(x);
+        cursor.setEndX(x);
+        cursor.setStartY(AXIS_HEIGHT);
+        cursor.setEndY(canvas.getHeight());
+        cursor.setVisible(true);
+    }
+
+    public void addTrack(WaveformFile file, String column) throws InvalidKeyException {
+        if(!file.getColumnHeaders().contains(column)) {
+            throw new InvalidKeyException("No such column " + column);
+        }
+        Track track = new Track(file, column, TRACK_COLORS[nextColor++ % TRACK_COLORS.length],
+                this::requestRedraw, this::followData);
+        file.addOffsetListener(track.offsetChanged);
+        file.addDataListener(track.dataChanged);
+        tracks.add(track);
+        // once the range was fitted it is the user's; adding a track must not undo their zoom
+        if(fitted) {
+            dataEnd = lastSampleTime();
+        } else {
+            fitTimeRange();
+        }
+        requestLayout();
+        requestRedraw();
+    }
+
+    public void removeTrack(WaveformFile file, String column) {
+        Iterator<Track> iterator = tracks.iterator();
+        while(iterator.hasNext()) {
+            Track track = iterator.next();
+            if(track.file == file && track.column.equals(column)) {
+                file.removeOffsetListener(track.offsetChanged);
+                file.removeDataListener(track.dataChanged);
+                iterator.remove();
+            }
+        }
+        fitted = fitted && !tracks.isEmpty();
+        dataEnd = lastSampleTime();
+        // the lanes below move up; keep as few buffers as there are lanes left
+        while(laneBuffers.size() > tracks.size()) {
+            laneBuffers.remove(laneBuffers.size() - 1);
+        }
+        requestLayout();
+        requestRedraw();
+    }
+
+    private int firstVisibleLane() {
+        return (int) Math.floor(laneScroller.getValue() / LANE_HEIGHT);
+    }
+
+    /**
+     * One past the last lane with any part on screen.
+     */
+    private int lastVisibleLane() {
+        double bottom = laneScroller.getValue() + canvas.getHeight() - AXIS_HEIGHT;
+        return Math.min(tracks.size(), (int) Math.ceil(bottom / LANE_HEIGHT));
+    }
+
+    public List<Track> getTracks() {
+        return tracks;
+    }
+
+    /**
+     * Told on the FX thread when a track's column could not be decoded or summarized, e.g. because a cell isn't a
+     * number. The lane shows the failure instead of the waveform until the track is removed.
+     */
+    public void setOnTrackFailed(BiConsumer<Track, Throwable> onTrackFailed) {
+        this.onTrackFailed = onTrackFailed;
+    }
+
+    public void setLabels(LabelIndex labels) {
+        if(this.labels != null) {
+            this.labels.removeChangeListener(labelsChanged);
+        }
+        this.labels = labels;
+        if(labels != null) {
+            labels.addChangeListener(labelsChanged);
+        }
+        requestRedraw();
+    }
+
+    /**
+     * Schedule a redraw on the FX thread. Any number of requests before it runs result in one redraw.
+     */
+    public void requestRedraw() {
+        if(redrawPending) {
+            return;
+        }
+        redrawPending = true;
+        Platform.runLater(() -> {
+            redrawPending = false;
+            draw();
+        });
+    }
+
+    /**
+     * Room for one lane; the view scrolls the others itself, so it wants whatever height it is given rather than room
+     * for all of them.
+     */
+    @Override
+    protected double computePrefHeight(double width) {
+        return AXIS_HEIGHT + LANE_HEIGHT;
+    }
+
+    @Override
+    protected double computeMinHeight(double width) {
+        return AXIS_HEIGHT + LANE_HEIGHT;
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return 0;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double height = snapSizeY(getHeight());
+        double lanesHeight = tracks.size() * LANE_HEIGHT;
+        double visible = Math.max(0, height - AXIS_HEIGHT);
+        boolean scrolling = lanesHeight > visible;
+        double scrollBarWidth = scrolling ? snapSizeX(laneScroller.prefWidth(-1)) : 0;
+        double width = snapSizeX(getWidth()) - scrollBarWidth;
+        laneScroller.setVisible(scrolling);
+        laneScroller.setMax(Math.max(0, lanesHeight - visible));
+        laneScroller.setVisibleAmount(scrolling ? laneScroller.getMax() * visible / lanesHeight : 0);
+        laneScroller.setBlockIncrement(Math.max(LANE_HEIGHT, visible - LANE_HEIGHT));
+        laneScroller.setValue(Math.min(laneScroller.getValue(), laneScroller.getMax()));
+        laneScroller.resizeRelocate(width, AXIS_HEIGHT, scrollBarWidth, visible);
+        if(canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas.setWidth(width);
+            canvas.setHeight(height);
+            draw();
+        }
+        layoutCursor();
+    }
+
+    /**
+     * Show every sample of every track.
+     */
+    public void fitTimeRange() {
+        double first = Double.POSITIVE_INFINITY;
+        double last = Double.NEGATIVE_INFINITY;
+        for(Track track : tracks) {
+            SampleColumn time = track.file.getTimeColumn();
+            if(time.size() > 0) {
+                first = Math.min(first, track.file.toSharedTime(time.getDouble(0)));
+                last = Math.max(last, track.file.toSharedTime(time.getDouble(time.size() - 1)));
+            }
+        }
+        if(first < last) {
+            range.set(first, last);
+            fitted = true;
+        }
+        dataEnd = last;
+    }
+
+    /**
+     * Samples were appended to a file that is still being written. If the view showed the newest samples, scroll it
+     * along to keep showing them at the same zoom; if it was scrolled back, leave it where it is.
+     */
+    private void followData() {
+        double previousEnd = dataEnd;
+        double last = lastSampleTime();
+        if(!fitted) {
+            // a stream that has only just started has no range to show yet
+            fitTimeRange();
+        } else {
+            dataEnd = last;
+            if(end >= previousEnd && last > previousEnd) {
+                range.pan(last - end);
+            }
+        }
+        requestRedraw();
+    }
+
+    private double lastSampleTime() {
+        double last = Double.NEGATIVE_INFINITY;
+        for(Track track : tracks) {
+            SampleColumn time = track.file.getTimeColumn();
+            if(time.size() > 0) {
+                last = Math.max(last, track.file.toSharedTime(time.getDouble(time.size() - 1)));
+            }
+        }
+        return last;
+    }
+
+    private void draw() {
+        FrameRenderEvent event = new FrameRenderEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long points = render();
+        Metrics.FRAME_RENDER.record((System.nanoTime() - start) / Metrics.NANOS_PER_MILLI);
+        event.tracks = Math.max(0, lastVisibleLane() - firstVisibleLane());
+        event.points = points;
+        event.commit();
+    }
+
+    /**
+     * @return the number of points drawn
+     */
+    private long render() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.setFill(BACKGROUND_COLOR);
+        gc.fillRect(0, 0, width, height);
+        if(width <= 0 || end <= start) {
+            return 0;
+        }
+
+        drawLabels(gc, width, height);
+        int first = firstVisibleLane();
+        int last = lastVisibleLane();
+        while(laneBuffers.size() < last - first) {
+            laneBuffers.add(new LaneBuffers());
+        }
+        double scrolled = laneScroller.getValue();
+        long points = 0;
+        for(int i = first; i < last; i++) {
+            points += drawTrack(gc, tracks.get(i), laneBuffers.get(i - first),
+                    AXIS_HEIGHT + i * LANE_HEIGHT - scrolled, width);
+        }
+        // over any lane scrolled partly under it
+        gc.setFill(BACKGROUND_COLOR);
+        gc.fillRect(0, 0, width, AXIS_HEIGHT);
+        drawAxis(gc, width);
+        return points;
+    }
+
+    private void drawLabels(GraphicsContext gc, double width, double height) {
+        if(labels == null) {
+            return;
+        }
+        double scale = width / (end - start);
+        gc.setFill(LABEL_COLOR);
+        labels.query(start, end, (TimeLabel label) -> {
+            double x = Math.max(0, (label.getStart() - start) * scale);
+            double right = Math.min(width, (label.getEnd() - start) * scale);
+            gc.fillRect(x, AXIS_HEIGHT, Math.max(1, right - x), height - AXIS_HEIGHT);
+        });
+    }
+
+    private void drawAxis(GraphicsContext gc, double width) {
+        double step = niceStep((end - start) * MIN_TICK_SPACING / width);
+        double scale = width / (end - start);
+        gc.setStroke(AXIS_COLOR);
+        gc.setFill(AXIS_COLOR);
+        gc.setLineWidth(1);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.TOP);
+        gc.strokeLine(0, AXIS_HEIGHT - 0.5, width, AXIS_HEIGHT - 0.5);
+        for(double tick = Math.ceil(start / step) * step; tick <= end; tick += step) {
+            double x = Math.floor((tick - start) * scale) + 0.5;
+            gc.strokeLine(x, AXIS_HEIGHT - 5, x, AXIS_HEIGHT);
+            gc.fillText(formatTick(tick, step), x, 2);
+        }
+    }
+
+    private int drawTrack(GraphicsContext gc, Track track, LaneBuffers buffers, double top, double width) {
+        int pixels = (int) Math.ceil(width);
+        double offset = track.file.getOffsetSeconds();
+        MinMaxPyramid pyramid;
+        try {
+            // fetched every frame because a file that is still being written rebuilds its pyramids as it grows
+            pyramid = track.file.getReadyPyramid(track.column);
+        } catch (InvalidKeyException e) {
+            return 0;
+        }
+        if(pyramid == null) {
+            prepare(track);
+            drawLaneFrame(gc, track, top, width, track.failure != null ? track.failure : "loading");
+            return 0;
+        }
+        Decimation decimation = buffers.decimation;
+        pyramid.decimate(track.file.getTimeColumn(), start - offset, end - offset, pixels, decimation);
+        int count = decimation.size();
+        if(buffers.xs.length < count) {
+            buffers.xs = new double[count];
+            buffers.ys = new double[count];
+        }
+
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for(int i = 0; i < count; i++) {
+            float y = decimation.getY(i);
+            if(y < min) {
+                min = y;
+            }
+            if(y > max) {
+                max = y;
+            }
+        }
+        if(min == max) {
+            min -= 1;
+            max += 1;
+        }
+
+        double scaleX = width / (end - start);
+        double scaleY = (LANE_HEIGHT - 2 * LANE_PADDING) / (max - min);
+        int points = 0;
+        for(int i = 0; i < count; i++) {
+            float y = decimation.getY(i);
+            if(Float.isNaN(y)) {
+                continue;
+            }
+            buffers.xs[points] = (decimation.getX(i) + offset - start) * scaleX;
+            buffers.ys[points] = top + LANE_PADDING + (max - y) * scaleY;
+            points++;
+        }
+
+        gc.setStroke(track.color);
+        gc.setLineWidth(1);
+        gc.strokePolyline(buffers.xs, buffers.ys, points);
+        drawLaneFrame(gc, track, top, width, null);
+        return points;
+    }
+
+    /**
+     * The separator under a lane and its title, followed by {@code status} when there is no waveform to show.
+     */
+    private void drawLaneFrame(GraphicsContext gc, Track track, double top, double width, String status) {
+        gc.setStroke(LANE_SEPARATOR_COLOR);
+        gc.setLineWidth(1);
+        gc.strokeLine(0, top + LANE_HEIGHT - 0.5, width, top + LANE_HEIGHT - 0.5);
+
+        gc.setFill(AXIS_COLOR);
+        gc.setTextAlign(TextAlignment.LEFT);
+        gc.setTextBaseline(VPos.TOP);
+        gc.fillText(status == null ? track.title : track.title + " (" + status + ")", 4, top + 2);
+    }
+
+    /**
+     * Decode a track's column and build its pyramid on the loader, then redraw. Tracks that failed are not tried again,
+     * so a bad cell is reported once rather than on every frame.
+     */
+    private void prepare(Track track) {
+        if(track.preparing || track.failure != null) {
+            return;
+        }
+        track.preparing = true;
+        loader.execute(() -> {
+            ChartBuildEvent event = new ChartBuildEvent();
+            event.begin();
+            long start = System.nanoTime();
+            Throwable failure = null;
+            try {
+                track.file.getPyramid(track.column);
+                Metrics.CHART_BUILD.record((System.nanoTime() - start) / Metrics.NANOS_PER_MILLI);
+                event.file = track.file.getFilename();
+                event.column = track.column;
+                event.renderer = "canvas";
+                event.commit();
+            } catch (InvalidKeyException | RuntimeException e) {
+                failure = e;
+            }
+            Throwable result = failure;
+            Platform.runLater(() -> prepared(track, result));
+        });
+    }
+
+    private void prepared(Track track, Throwable failure) {
+        track.preparing = false;
+        if(!tracks.contains(track)) {
+            // removed while it was being prepared, so what was just built outlived the release of its column
+            boolean shown = false;
+            for(Track other : tracks) {
+                shown |= other.file == track.file && other.column.equals(track.column);
+            }
+            if(!shown) {
+                track.file.releaseColumn(track.column);
+            }
+            return;
+        }
+        if(failure != null) {
+            track.failure = failure.getMessage() != null ? failure.getMessage() : failure.toString();
+            if(onTrackFailed != null) {
+                onTrackFailed.accept(track, failure);
+            }
+        }
+        requestRedraw();
+    }
+
+    /**
+     * Round a raw tick spacing up to 1, 2 or 5 times a power of ten.
+     */
+    private static double niceStep(double raw) {
+        double magnitude = Math.pow(10, Math.floor(Math.log10(raw)));
+        double normalized = raw / magnitude;
+        if(normalized <= 1) {
+            return magnitude;
+        } else if(normalized <= 2) {
+            return 2 * magnitude;
+        } else if(normalized <= 5) {
+            return 5 * magnitude;
+        }
+        return 10 * magnitude;
+    }
+
+    private static String formatTick(double tick, double step) {
+        int decimals = Math.max(0, (int) -Math.floor(Math.log10(step)));
+        return String.format("%." + decimals + "f", tick);
+    }
+}
@@ -0,0 +1,60 @@
+package batch;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchSegmenterTest {
+    private static final long START_CENTISECONDS = 170000000000L;
+
+    @BeforeAll
+    static void disableCache() {
+        System.setProperty("labelme.cache", "false");
+    }
+
+    @Test
+    void keepsEpochTimesOfSegmentRows(@TempDir File directory) throws IOException {
+        File input = new File(directory, "input");
+        File output = new File(directory, "output");
+        assertTrue(input.mkdir());
+        // epoch seconds 10 ms apart, far more digits than a float keeps
+        try(PrintWriter writer = new PrintWriter(new File(input, "recording.csv"), StandardCharsets.UTF_8)) {
+            writer.println("time,value");
+            for(int i = 0; i < 1000; i++) {
+                writer.println(BigDecimal.valueOf(START_CENTISECONDS + i, 2).toPlainString() + "," + (i % 7) * 0.5);
+            }
+        }
+        try(PrintWriter writer = new PrintWriter(new File(input, "recording.labels.csv"), StandardCharsets.UTF_8)) {
+            writer.println("id,start,end,name");
+            writer.println("1,1700000001.5,1700000002,step");
+        }
+
+        BatchSegmenter segmenter = new BatchSegmenter(input, input, output, "time", 0, 0);
+        assertTrue(segmenter.run(1));
+
+        List<String> lines = Files.readAllLines(new File(output, "recording.segments.csv").toPath());
+        assertEquals("label_id,label,window,time,value", lines.get(0));
+        // the label covers 1.5 s to 2 s after the start inclusive, rows 150 to 200
+        assertEquals(52, lines.size());
+        for(int i = 1; i < lines.size(); i++) {
+            String[] fields = lines.get(i).split(",");
+            assertEquals(Arrays.asList("1", "step", "0"), Arrays.asList(fields).subList(0, 3));
+            int row = 149 + i;
+            assertEquals(0, BigDecimal.valueOf(START_CENTISECONDS + row, 2).compareTo(new BigDecimal(fields[3])),
+                    "time of row " + row + " was " + fields[3]);
+            assertEquals((row % 7) * 0.5, Double.parseDouble(fields[4]));
+        }
+    }
+}